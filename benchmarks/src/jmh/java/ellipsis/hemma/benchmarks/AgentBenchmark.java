@@ -0,0 +1,59 @@
+package ellipsis.hemma.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ellipsis.hemma.Agent;
+import ellipsis.hemma.IAgent.AgentType;
+
+/**
+ * Local computations of every agent of one type; one operation is a sweep
+ * over those agents.
+ */
+@State(Scope.Benchmark)
+public class AgentBenchmark
+{
+	@Param({"VC", "CP", "CC"})
+	public AgentType agentType;
+
+	private List<Agent> agents;
+
+	@Setup
+	public void setup(NetworkState network)
+	{
+		agents = new ArrayList<>();
+		for (Agent agent : network.agents)
+		{
+			if(agent.getType() == agentType)
+				agents.add(agent);
+		}
+	}
+
+	@Benchmark
+	public void gradient(Blackhole blackhole)
+	{
+		for (Agent agent : agents)
+			blackhole.consume(agent.gradient());
+	}
+
+	@Benchmark
+	public void gPlus(Blackhole blackhole)
+	{
+		for (Agent agent : agents)
+			blackhole.consume(agent.gPlus());
+	}
+
+	@Benchmark
+	public void gMinus(Blackhole blackhole)
+	{
+		for (Agent agent : agents)
+			blackhole.consume(agent.gMinus());
+	}
+}
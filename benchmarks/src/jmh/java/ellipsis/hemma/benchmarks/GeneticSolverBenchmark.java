@@ -0,0 +1,34 @@
+package ellipsis.hemma.benchmarks;
+
+import org.apache.commons.math3.linear.RealVector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import ellipsis.genetics.VectorGeneticSolver;
+
+/**
+ * The solver's own overhead: selection, breeding and bookkeeping over 50
+ * generations, with a fitness function far cheaper than a simulation.
+ */
+@State(Scope.Benchmark)
+public class GeneticSolverBenchmark
+{
+	private static final int GENERATIONS = 50;
+
+	@Param({"20", "100"})
+	public int populationSize;
+
+	@Param({"5", "50"})
+	public int dimension;
+
+	@Benchmark
+	public RealVector solve()
+	{
+		VectorGeneticSolver solver = new VectorGeneticSolver(dimension, -1.0, 1.0, 0.5, 0.5, GENERATIONS, Double.POSITIVE_INFINITY);
+		solver.withFitness(dna -> -dna.dotProduct(dna));
+		solver.withSeed(0);
+		return solver.solve(new RealVector[populationSize]);
+	}
+}
@@ -0,0 +1,59 @@
+package ellipsis.hemma.benchmarks;
+
+import java.util.Set;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ellipsis.hemma.Agent;
+import ellipsis.hemma.test.Solution;
+import ellipsis.hemma.test.testcases.TestCase;
+
+/**
+ * A full iteration of the optimisation: each agent's line searches and
+ * steps, then the protocol; one operation is a sweep over the network.
+ */
+@State(Scope.Benchmark)
+public class IterationBenchmark
+{
+	private Solution solution;
+	private Driver driver;
+
+	// Data points accumulate, so start each iteration afresh:
+	@Setup(Level.Iteration)
+	public void setup(NetworkState network)
+	{
+		solution = new Solution();
+		driver = new Driver(network.agents);
+	}
+
+	@Benchmark
+	public void iterate(NetworkState network)
+	{
+		driver.iterate(solution, network.k++);
+	}
+
+	private static class Driver extends TestCase
+	{
+		private final Set<Agent> agents;
+
+		Driver(Set<Agent> agents)
+		{
+			this.agents = agents;
+		}
+
+		@Override
+		public Set<Agent> init()
+		{
+			return agents;
+		}
+
+		void iterate(Solution sol, int k)
+		{
+			executeIteration(agents, sol, k);
+		}
+	}
+}
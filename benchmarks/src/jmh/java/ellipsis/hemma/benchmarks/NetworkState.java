@@ -0,0 +1,62 @@
+package ellipsis.hemma.benchmarks;
+
+import static ellipsis.common.ListUtil.setEach;
+
+import java.util.Set;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ellipsis.hemma.Agent;
+import ellipsis.hemma.HemmaParameters;
+import ellipsis.hemma.test.NetworkGenerator;
+import ellipsis.hemma.test.testcases.TestCase;
+
+/**
+ * A generated scale free network part way through an optimisation, so that
+ * sessions are established and neighbour caches filled.
+ */
+@State(Scope.Benchmark)
+public class NetworkState
+{
+	private static final int WARM_UP_ITERATIONS = 20;
+
+	@Param({"8", "100", "1000"})
+	public int busCount;
+
+	/**
+	 * Mean degree; each new bus links to degree/2 existing ones.
+	 */
+	@Param({"2", "4", "8"})
+	public int degree;
+
+	public Set<Agent> agents;
+	public int k;
+
+	@Setup
+	public void setup()
+	{
+		agents = new NetworkGenerator(0)
+				.scaleFree(busCount, Math.max(1, degree/2))
+				.builder()
+				.withParameterStore(null)
+				.agentSet();
+		HemmaParameters.DEFAULT.applyTo(agents);
+		setEach(agents, Agent::setAlphaMax,  1e24);
+		setEach(agents, Agent::setLambdaMax, 1e6);
+		agents.forEach(Agent::switchOn);
+
+		TestCase.minimalLogging = true;
+		new TestCase()
+		{
+			@Override
+			public Set<Agent> init()
+			{
+				return agents;
+			}
+		}.optimise(agents, WARM_UP_ITERATIONS);
+		k = WARM_UP_ITERATIONS;
+	}
+}
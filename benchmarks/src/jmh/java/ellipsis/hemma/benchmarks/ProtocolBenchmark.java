@@ -0,0 +1,30 @@
+package ellipsis.hemma.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import ellipsis.hemma.Agent;
+
+/**
+ * Protocol work of every agent; one operation is a sweep over the network.
+ */
+public class ProtocolBenchmark
+{
+	@Benchmark
+	public void updateValues(NetworkState network)
+	{
+		for (Agent agent : network.agents)
+			agent.getHemmaProtocol().updateValues();
+	}
+
+	/**
+	 * Advances the protocol one iteration, as after the agents' local
+	 * minimisation, without moving the agents' state.
+	 */
+	@Benchmark
+	public void execute(NetworkState network)
+	{
+		int k = network.k++;
+		for (Agent agent : network.agents)
+			agent.getHemmaProtocol().execute(k);
+	}
+}
@@ -0,0 +1,37 @@
+package ellipsis.hemma.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ellipsis.hemma.test.Solution;
+
+/**
+ * Network wide metrics recorded each iteration.
+ */
+@State(Scope.Benchmark)
+public class SolutionBenchmark
+{
+	private Solution solution;
+
+	// Data points accumulate, so start each iteration afresh:
+	@Setup(Level.Iteration)
+	public void setup()
+	{
+		solution = new Solution();
+	}
+
+	@Benchmark
+	public Double lagrange(NetworkState network)
+	{
+		return solution.lagrange(network.agents);
+	}
+
+	@Benchmark
+	public void storeDataPoint(NetworkState network)
+	{
+		solution.storeDataPoint(network.agents);
+	}
+}
@@ -0,0 +1,390 @@
+package ellipsis.genetics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.CholeskyDecomposition;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.NonPositiveDefiniteMatrixException;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+
+/**
+ * Maximises an expensive fitness function over a box with a Gaussian
+ * process surrogate and the expected improvement acquisition function.
+ * Configured like a {@link GeneticSolver}; only the fitness function,
+ * stopping criteria, logger, listeners, parallelism and executor are used.
+ *
+ * The initial population is sampled uniformly from the box (or from the
+ * creator if one is set). Each iteration then suggests a batch of points,
+ * by default as many as the parallelism, using the constant liar heuristic
+ * to spread the batch, and evaluates them together. The population passed to the stopping
+ * criteria, listeners and logger holds every point evaluated so far and k
+ * counts batches.
+ *
+ * The surrogate uses a Matern 5/2 kernel on coordinates scaled to [0, 1]
+ * with fitness standardised to zero mean and unit variance. The length scale
+ * and noise are chosen from a grid by marginal likelihood each iteration.
+ * Evaluations that fail (NaN or below -1e100) are treated as slightly worse
+ * than the worst successful evaluation.
+ */
+public class BayesianOptimiser extends GeneticSolver<RealVector>
+{
+	private static final double[] LENGTH_SCALES = {0.05, 0.1, 0.2, 0.4, 0.8, 1.6};
+	private static final double[] NOISE_VARIANCES = {1e-6, 1e-4, 1e-2, 1e-1};
+	private static final double FAILED = -1e100;
+	private static final NormalDistribution STANDARD_NORMAL = new NormalDistribution(0, 1);
+
+	private double[] lower;
+	private double[] upper;
+	private int dimension;
+	private int candidateCount = 2000;
+	private double exploration = 0.01;
+	private int batchSize; // 0 to follow parallelism
+
+	/**
+	 * @param lower Lower bound of each parameter.
+	 * @param upper Upper bound of each parameter.
+	 */
+	public BayesianOptimiser(double[] lower, double[] upper)
+	{
+		this.lower = lower.clone();
+		this.upper = upper.clone();
+		this.dimension = lower.length;
+	}
+
+	/**
+	 * Stop after the given number of evaluations, including the initial population.
+	 */
+	public BayesianOptimiser withMaxEvaluations(int evaluations)
+	{
+		withStoppingCriteria((population, fitness, k) -> population.length >= evaluations);
+		return this;
+	}
+
+	/**
+	 * @param count Number of random points at which expected improvement is
+	 * evaluated when choosing each suggestion.
+	 */
+	public BayesianOptimiser withCandidateCount(int count)
+	{
+		this.candidateCount = count;
+		return this;
+	}
+
+	/**
+	 * @param size Number of points suggested and evaluated together. Defaults
+	 * to the parallelism; fixing it makes seeded runs independent of the parallelism.
+	 */
+	public BayesianOptimiser withBatchSize(int size)
+	{
+		this.batchSize = size;
+		return this;
+	}
+
+	/**
+	 * @param xi Improvement, in standard deviations of fitness, that is ignored; larger values explore more.
+	 */
+	public BayesianOptimiser withExploration(double xi)
+	{
+		this.exploration = xi;
+		return this;
+	}
+
+	/**
+	 * @param population The initial population, e.g. 2*dimension+1 points.
+	 */
+	@Override
+	protected RealVector evolve(RealVector[] population)
+	{
+		// Initial design:
+		double[] fitness = new double[population.length];
+		for (int i = 0; i < population.length; i++)
+		{
+			population[i] = creator != null ? creator.create() : randomPoint();
+			fitness[i] = Double.NaN;
+		}
+		if(iterationStartListener != null)
+			iterationStartListener.execute(population, fitness, -1);
+		evaluate(population, fitness, 0);
+
+		List<RealVector> xs = new ArrayList<>(Arrays.asList(population));
+		double[] ys = fitness;
+		RealVector[] observed = population;
+		int batchSize = Math.max(1, this.batchSize > 0 ? this.batchSize : parallelism);
+
+		int k = 0;
+		while(!stoppingCriteria.stop(observed, ys, k))
+		{
+			if(iterationStartListener != null)
+				iterationStartListener.execute(observed, ys, k);
+
+			RealVector[] batch = suggest(xs, ys, batchSize);
+			double[] batchFitness = new double[batch.length];
+			Arrays.fill(batchFitness, Double.NaN);
+			evaluate(batch, batchFitness, 0);
+
+			xs.addAll(Arrays.asList(batch));
+			ys = Arrays.copyOf(ys, ys.length + batch.length);
+			System.arraycopy(batchFitness, 0, ys, ys.length - batch.length, batch.length);
+			observed = xs.toArray(new RealVector[xs.size()]);
+			++k;
+
+			if(iterationEndListener != null)
+				iterationEndListener.execute(observed, ys, k);
+			log(k, observed, ys);
+		}
+
+		return observed[fittest(ys)];
+	}
+
+	/**
+	 * Suggests points to evaluate next.
+	 * @param xs Evaluated points.
+	 * @param ys Fitness of each evaluated point.
+	 */
+	public RealVector[] suggest(List<RealVector> xs, double[] ys, int batchSize)
+	{
+		List<double[]> points = new ArrayList<>(xs.size() + batchSize);
+		for (RealVector x : xs)
+			points.add(scale(x));
+		double[] values = standardise(repairFailures(ys));
+		double lie = Arrays.stream(values).min().orElse(0.0); // pessimistic for a maximisation
+
+		RealVector[] batch = new RealVector[batchSize];
+		for (int b = 0; b < batchSize; b++)
+		{
+			GaussianProcess gp = GaussianProcess.fit(points, values);
+			double best = Arrays.stream(values).max().orElse(0.0);
+			double[] next = maximiseExpectedImprovement(gp, points, values, best);
+			batch[b] = unscale(next);
+
+			// Pretend the suggestion has been evaluated so the next one goes elsewhere:
+			points.add(next);
+			values = Arrays.copyOf(values, values.length+1);
+			values[values.length-1] = lie;
+		}
+		return batch;
+	}
+
+	private double[] maximiseExpectedImprovement(GaussianProcess gp, List<double[]> points, double[] values, double best)
+	{
+		// Search uniformly and around the fittest points:
+		int[] order = new int[values.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		int[] fittest = Arrays.stream(order).boxed()
+				.sorted((a, b) -> Double.compare(values[b], values[a]))
+				.limit(5).mapToInt(Integer::intValue).toArray();
+
+		double[] bestCandidate = null;
+		double bestEI = Double.NEGATIVE_INFINITY;
+		for (int c = 0; c < candidateCount; c++)
+		{
+			double[] candidate = new double[dimension];
+			if(c%2 == 0)
+			{
+				for (int d = 0; d < dimension; d++)
+					candidate[d] = random.nextDouble();
+			}
+			else
+			{
+				double[] centre = points.get(fittest[random.nextInt(fittest.length)]);
+				double spread = c%4 == 1 ? 0.1 : 0.02;
+				for (int d = 0; d < dimension; d++)
+					candidate[d] = Math.min(1, Math.max(0, centre[d] + spread*nextGaussian(random)));
+			}
+
+			double ei = expectedImprovement(gp, candidate, best);
+			if(ei > bestEI)
+			{
+				bestEI = ei;
+				bestCandidate = candidate;
+			}
+		}
+		return bestCandidate;
+	}
+
+	private double expectedImprovement(GaussianProcess gp, double[] x, double best)
+	{
+		double[] prediction = gp.predict(x);
+		double sigma = Math.sqrt(prediction[1]);
+		double improvement = prediction[0] - best - exploration;
+		if(sigma < 1e-12)
+			return Math.max(0, improvement);
+		double z = improvement/sigma;
+		return improvement*STANDARD_NORMAL.cumulativeProbability(z) + sigma*STANDARD_NORMAL.density(z);
+	}
+
+	private static double[] repairFailures(double[] ys)
+	{
+		double worst = Double.POSITIVE_INFINITY, bestValue = Double.NEGATIVE_INFINITY;
+		for (double y : ys)
+		{
+			if(!Double.isNaN(y) && y > FAILED)
+			{
+				worst = Math.min(worst, y);
+				bestValue = Math.max(bestValue, y);
+			}
+		}
+		if(worst == Double.POSITIVE_INFINITY)
+			worst = bestValue = 0;
+		double failed = worst - Math.max(1e-9, 0.1*(bestValue - worst));
+
+		double[] repaired = ys.clone();
+		for (int i = 0; i < repaired.length; i++)
+		{
+			if(Double.isNaN(repaired[i]) || repaired[i] <= FAILED)
+				repaired[i] = failed;
+		}
+		return repaired;
+	}
+
+	private static double[] standardise(double[] ys)
+	{
+		double mean = 0, variance = 0;
+		for (double y : ys)
+			mean += y/ys.length;
+		for (double y : ys)
+			variance += (y-mean)*(y-mean)/ys.length;
+		double sd = variance > 0 ? Math.sqrt(variance) : 1.0;
+		double[] standardised = new double[ys.length];
+		for (int i = 0; i < ys.length; i++)
+			standardised[i] = (ys[i] - mean)/sd;
+		return standardised;
+	}
+
+	private double[] scale(RealVector x)
+	{
+		double[] scaled = new double[dimension];
+		for (int d = 0; d < dimension; d++)
+			scaled[d] = (x.getEntry(d) - lower[d])/(upper[d] - lower[d]);
+		return scaled;
+	}
+
+	private RealVector unscale(double[] x)
+	{
+		RealVector v = new ArrayRealVector(dimension);
+		for (int d = 0; d < dimension; d++)
+			v.setEntry(d, lower[d] + x[d]*(upper[d] - lower[d]));
+		return v;
+	}
+
+	private RealVector randomPoint()
+	{
+		double[] x = new double[dimension];
+		for (int d = 0; d < dimension; d++)
+			x[d] = random.nextDouble();
+		return unscale(x);
+	}
+
+	/**
+	 * Zero mean Gaussian process with a Matern 5/2 kernel of unit variance.
+	 */
+	static class GaussianProcess
+	{
+		private List<double[]> points;
+		private double lengthScale;
+		private double[][] L; // lower triangular Cholesky factor of K + noise*I
+		private double[] alpha; // (K + noise*I)^-1 y
+		private double logLikelihood;
+
+		/**
+		 * Fits with the length scale and noise that maximise the marginal likelihood.
+		 */
+		static GaussianProcess fit(List<double[]> points, double[] values)
+		{
+			GaussianProcess best = null;
+			for (double lengthScale : LENGTH_SCALES)
+			{
+				for (double noise : NOISE_VARIANCES)
+				{
+					GaussianProcess gp = new GaussianProcess(points, values, lengthScale, noise);
+					if(gp.L != null && (best == null || gp.logLikelihood > best.logLikelihood))
+						best = gp;
+				}
+			}
+			if(best == null) // fall back to a heavily regularised fit
+				best = new GaussianProcess(points, values, LENGTH_SCALES[0], 1.0);
+			return best;
+		}
+
+		GaussianProcess(List<double[]> points, double[] values, double lengthScale, double noise)
+		{
+			this.points = points;
+			this.lengthScale = lengthScale;
+
+			int n = points.size();
+			RealMatrix K = MatrixUtils.createRealMatrix(n, n);
+			for (int i = 0; i < n; i++)
+			{
+				for (int j = 0; j <= i; j++)
+				{
+					double kij = kernel(points.get(i), points.get(j));
+					K.setEntry(i, j, kij);
+					K.setEntry(j, i, kij);
+				}
+				K.addToEntry(i, i, noise);
+			}
+
+			CholeskyDecomposition cholesky;
+			try
+			{
+				cholesky = new CholeskyDecomposition(K, 1e-12, 1e-14);
+			}
+			catch (NonPositiveDefiniteMatrixException e)
+			{
+				return;
+			}
+			L = cholesky.getL().getData();
+			alpha = cholesky.getSolver().solve(new ArrayRealVector(values, false)).toArray();
+
+			double logDeterminant = 0;
+			for (int i = 0; i < n; i++)
+				logDeterminant += Math.log(L[i][i]);
+			double fit = 0;
+			for (int i = 0; i < n; i++)
+				fit += values[i]*alpha[i];
+			logLikelihood = -0.5*fit - logDeterminant - 0.5*n*Math.log(2*Math.PI);
+		}
+
+		double kernel(double[] a, double[] b)
+		{
+			double squared = 0;
+			for (int d = 0; d < a.length; d++)
+				squared += (a[d] - b[d])*(a[d] - b[d]);
+			double r = Math.sqrt(5*squared)/lengthScale;
+			return (1 + r + r*r/3)*Math.exp(-r);
+		}
+
+		/**
+		 * @return {mean, variance} of the prediction at x.
+		 */
+		double[] predict(double[] x)
+		{
+			int n = points.size();
+			double[] k = new double[n];
+			double mean = 0;
+			for (int i = 0; i < n; i++)
+			{
+				k[i] = kernel(points.get(i), x);
+				mean += k[i]*alpha[i];
+			}
+
+			// v = L^-1 k by forward substitution:
+			double vv = 0;
+			for (int i = 0; i < n; i++)
+			{
+				double sum = k[i];
+				for (int j = 0; j < i; j++)
+					sum -= L[i][j]*k[j];
+				k[i] = sum/L[i][i];
+				vv += k[i]*k[i];
+			}
+			return new double[]{mean, Math.max(0, 1 - vv)};
+		}
+	}
+}
@@ -0,0 +1,296 @@
+package ellipsis.genetics;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.EigenDecomposition;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+
+/**
+ * Covariance matrix adaptation evolution strategy, (mu/mu_w, lambda)-CMA-ES,
+ * maximising fitness over a box. Each generation samples the population
+ * from a multivariate normal distribution and moves its mean towards the
+ * fitter half of the samples, adapting the covariance to the shape of the
+ * fitness landscape and the step size to the progress made. This copes well
+ * with continuous, correlated and badly scaled parameters.
+ *
+ * Configured like a {@link GeneticSolver}; only the fitness function,
+ * creator, stopping criteria, logger, listeners, parallelism, executor and
+ * population evaluator are used. The population size passed to solve is
+ * lambda, e.g. {@link #defaultPopulationSize(int)}. Coordinates are scaled to
+ * [0, 1] and samples outside the box are clipped to it. The initial mean is
+ * made by the creator, or is the centre of the box if there is none.
+ * Returns the fittest point evaluated in any generation. Failed
+ * evaluations, with NaN fitness, are ranked below all others.
+ */
+public class CMAESSolver extends GeneticSolver<RealVector>
+{
+	private double[] lower;
+	private double[] upper;
+	private int dimension;
+	private double initialStepSize = 0.3;
+
+	/**
+	 * @param lower Lower bound of each parameter.
+	 * @param upper Upper bound of each parameter.
+	 */
+	public CMAESSolver(double[] lower, double[] upper)
+	{
+		this.lower = lower.clone();
+		this.upper = upper.clone();
+		this.dimension = lower.length;
+	}
+
+	/**
+	 * @param sigma Initial standard deviation as a fraction of the box width.
+	 */
+	public CMAESSolver withInitialStepSize(double sigma)
+	{
+		this.initialStepSize = sigma;
+		return this;
+	}
+
+	/**
+	 * @return 4 + 3ln(dimension), the usual choice of lambda.
+	 */
+	public static int defaultPopulationSize(int dimension)
+	{
+		return 4 + (int)(3*Math.log(dimension));
+	}
+
+	@Override
+	protected RealVector evolve(RealVector[] population)
+	{
+		int n = dimension;
+		int lambda = population.length;
+		int mu = lambda/2;
+
+		// Recombination weights:
+		double[] weights = new double[mu];
+		double sum = 0, sumSquares = 0;
+		for (int i = 0; i < mu; i++)
+		{
+			weights[i] = Math.log(mu + 0.5) - Math.log(i + 1);
+			sum += weights[i];
+		}
+		for (int i = 0; i < mu; i++)
+		{
+			weights[i] /= sum;
+			sumSquares += weights[i]*weights[i];
+		}
+		double mueff = 1/sumSquares;
+
+		// Adaptation rates:
+		double cc = (4 + mueff/n)/(n + 4 + 2*mueff/n);
+		double cs = (mueff + 2)/(n + mueff + 5);
+		double c1 = 2/((n + 1.3)*(n + 1.3) + mueff);
+		double cmu = Math.min(1 - c1, 2*(mueff - 2 + 1/mueff)/((n + 2)*(n + 2) + mueff));
+		double damps = 1 + 2*Math.max(0, Math.sqrt((mueff - 1)/(n + 1)) - 1) + cs;
+		double chiN = Math.sqrt(n)*(1 - 1.0/(4*n) + 1.0/(21*n*n));
+
+		// State:
+		double[] mean = creator != null ? scale(creator.create()) : filled(n, 0.5);
+		double sigma = initialStepSize;
+		double[] pc = new double[n];
+		double[] ps = new double[n];
+		double[][] C = MatrixUtils.createRealIdentityMatrix(n).getData();
+		double[][] B = MatrixUtils.createRealIdentityMatrix(n).getData();
+		double[] D = filled(n, 1.0);
+
+		double[][] samples = new double[lambda][];
+		double[] fitness = new double[lambda];
+
+		// Sample and evaluate the initial population:
+		sample(samples, population, mean, sigma, B, D);
+		Arrays.fill(fitness, Double.NaN);
+		if(iterationStartListener != null)
+			iterationStartListener.execute(population, fitness, -1);
+		evaluate(population, fitness, 0);
+		rankFailuresLast(fitness);
+		int best = fittest(fitness);
+		RealVector fittestDNA = population[best];
+		double fittestFitness = fitness[best];
+
+		int k = 0;
+		while(!stoppingCriteria.stop(population, fitness, k))
+		{
+			if(iterationStartListener != null)
+				iterationStartListener.execute(population, fitness, k);
+
+			// Move the mean towards the fittest mu samples:
+			Integer[] order = new Integer[lambda];
+			for (int i = 0; i < lambda; i++)
+				order[i] = i;
+			Arrays.sort(order, (a, b) -> Double.compare(fitness[b], fitness[a]));
+			double[] oldMean = mean;
+			mean = new double[n];
+			for (int i = 0; i < mu; i++)
+			{
+				for (int d = 0; d < n; d++)
+					mean[d] += weights[i]*samples[order[i]][d];
+			}
+
+			// Evolution paths:
+			double[] step = new double[n];
+			for (int d = 0; d < n; d++)
+				step[d] = (mean[d] - oldMean[d])/sigma;
+			double[] whitened = multiply(B, divide(multiply(transpose(B), step), D)); // C^-1/2 * step
+			double psNorm = 0;
+			for (int d = 0; d < n; d++)
+			{
+				ps[d] = (1 - cs)*ps[d] + Math.sqrt(cs*(2 - cs)*mueff)*whitened[d];
+				psNorm += ps[d]*ps[d];
+			}
+			psNorm = Math.sqrt(psNorm);
+			boolean hsig = psNorm/Math.sqrt(1 - Math.pow(1 - cs, 2*(k + 1)))/chiN < 1.4 + 2.0/(n + 1);
+			for (int d = 0; d < n; d++)
+				pc[d] = (1 - cc)*pc[d] + (hsig ? Math.sqrt(cc*(2 - cc)*mueff)*step[d] : 0);
+
+			// Covariance:
+			double[][] y = new double[mu][n];
+			for (int i = 0; i < mu; i++)
+			{
+				for (int d = 0; d < n; d++)
+					y[i][d] = (samples[order[i]][d] - oldMean[d])/sigma;
+			}
+			for (int d = 0; d < n; d++)
+			{
+				for (int e = 0; e <= d; e++)
+				{
+					double rankMu = 0;
+					for (int i = 0; i < mu; i++)
+						rankMu += weights[i]*y[i][d]*y[i][e];
+					double c = (1 - c1 - cmu)*C[d][e]
+							+ c1*(pc[d]*pc[e] + (hsig ? 0 : cc*(2 - cc)*C[d][e]))
+							+ cmu*rankMu;
+					C[d][e] = c;
+					C[e][d] = c;
+				}
+			}
+
+			// Step size:
+			sigma *= Math.exp((cs/damps)*(psNorm/chiN - 1));
+
+			// C = B*D^2*B':
+			EigenDecomposition eigen = new EigenDecomposition(MatrixUtils.createRealMatrix(C));
+			RealMatrix V = eigen.getV();
+			double[] eigenvalues = eigen.getRealEigenvalues();
+			for (int d = 0; d < n; d++)
+			{
+				D[d] = Math.sqrt(Math.max(eigenvalues[d], 1e-20));
+				for (int e = 0; e < n; e++)
+					B[e][d] = V.getEntry(e, d);
+			}
+
+			// Sample and evaluate the next generation:
+			sample(samples, population, mean, sigma, B, D);
+			Arrays.fill(fitness, Double.NaN);
+			evaluate(population, fitness, 0);
+			rankFailuresLast(fitness);
+			best = fittest(fitness);
+			if(fitness[best] > fittestFitness)
+			{
+				fittestDNA = population[best];
+				fittestFitness = fitness[best];
+			}
+
+			++k;
+
+			if(iterationEndListener != null)
+				iterationEndListener.execute(population, fitness, k);
+			log(k, population, fitness);
+		}
+
+		return fittestDNA;
+	}
+
+	/**
+	 * Samples x = mean + sigma*B*D*z, z ~ N(0, I), clipped to the unit box.
+	 */
+	private void sample(double[][] samples, RealVector[] population, double[] mean, double sigma, double[][] B, double[] D)
+	{
+		int n = mean.length;
+		for (int i = 0; i < samples.length; i++)
+		{
+			double[] z = new double[n];
+			for (int d = 0; d < n; d++)
+				z[d] = D[d]*nextGaussian(random);
+			samples[i] = new double[n];
+			for (int d = 0; d < n; d++)
+			{
+				double x = mean[d];
+				for (int e = 0; e < n; e++)
+					x += sigma*B[d][e]*z[e];
+				samples[i][d] = Math.min(1, Math.max(0, x));
+			}
+			population[i] = unscale(samples[i]);
+		}
+	}
+
+	private static double[] filled(int n, double value)
+	{
+		double[] a = new double[n];
+		Arrays.fill(a, value);
+		return a;
+	}
+
+	private static double[] multiply(double[][] M, double[] v)
+	{
+		double[] r = new double[M.length];
+		for (int i = 0; i < M.length; i++)
+		{
+			for (int j = 0; j < v.length; j++)
+				r[i] += M[i][j]*v[j];
+		}
+		return r;
+	}
+
+	private static double[][] transpose(double[][] M)
+	{
+		double[][] T = new double[M[0].length][M.length];
+		for (int i = 0; i < M.length; i++)
+		{
+			for (int j = 0; j < M[i].length; j++)
+				T[j][i] = M[i][j];
+		}
+		return T;
+	}
+
+	private static double[] divide(double[] v, double[] by)
+	{
+		double[] r = new double[v.length];
+		for (int i = 0; i < v.length; i++)
+			r[i] = v[i]/by[i];
+		return r;
+	}
+
+	private double[] scale(RealVector x)
+	{
+		double[] scaled = new double[dimension];
+		for (int d = 0; d < dimension; d++)
+			scaled[d] = Math.min(1, Math.max(0, (x.getEntry(d) - lower[d])/(upper[d] - lower[d])));
+		return scaled;
+	}
+
+	private RealVector unscale(double[] x)
+	{
+		RealVector v = new ArrayRealVector(dimension);
+		for (int d = 0; d < dimension; d++)
+			v.setEntry(d, lower[d] + x[d]*(upper[d] - lower[d]));
+		return v;
+	}
+
+	/**
+	 * Replaces NaN fitness, which would otherwise be ranked first, with -Infinity.
+	 */
+	private static void rankFailuresLast(double[] fitness)
+	{
+		for (int i = 0; i < fitness.length; i++)
+		{
+			if(Double.isNaN(fitness[i]))
+				fitness[i] = Double.NEGATIVE_INFINITY;
+		}
+	}
+}
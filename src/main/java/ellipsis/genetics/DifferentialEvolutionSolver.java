@@ -0,0 +1,142 @@
+package ellipsis.genetics;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealVector;
+
+/**
+ * Differential evolution, DE/rand/1/bin, maximising fitness over a box.
+ * Each generation every member of the population is challenged by a trial
+ * vector made by adding the scaled difference of two random members to a
+ * third and crossing the result with the member. The trial replaces the
+ * member if it is at least as fit. Steps are scaled by the spread of the
+ * population, so they shrink as it converges and follow correlations
+ * between parameters.
+ *
+ * Configured like a {@link GeneticSolver}; only the fitness function,
+ * creator, stopping criteria, logger, listeners, parallelism, executor and
+ * population evaluator are used. All trials of a generation are evaluated
+ * together. The initial population is made by the creator, or sampled
+ * uniformly from the box if there is none. The population must have at
+ * least four members.
+ */
+public class DifferentialEvolutionSolver extends GeneticSolver<RealVector>
+{
+	private double[] lower;
+	private double[] upper;
+	private int dimension;
+	private double differentialWeight = 0.5;
+	private double crossoverProbability = 0.9;
+
+	/**
+	 * @param lower Lower bound of each parameter.
+	 * @param upper Upper bound of each parameter.
+	 */
+	public DifferentialEvolutionSolver(double[] lower, double[] upper)
+	{
+		this.lower = lower.clone();
+		this.upper = upper.clone();
+		this.dimension = lower.length;
+	}
+
+	/**
+	 * @param f Scale of the difference vector, usually in [0.4, 1].
+	 */
+	public DifferentialEvolutionSolver withDifferentialWeight(double f)
+	{
+		this.differentialWeight = f;
+		return this;
+	}
+
+	/**
+	 * @param cr Probability of taking each parameter from the mutant rather than the member.
+	 */
+	public DifferentialEvolutionSolver withCrossoverProbability(double cr)
+	{
+		this.crossoverProbability = cr;
+		return this;
+	}
+
+	@Override
+	protected RealVector evolve(RealVector[] population)
+	{
+		int size = population.length;
+		if(size < 4)
+			throw new IllegalArgumentException("Population of "+size+" is too small; each trial needs three members other than the one challenged");
+
+		// Create pool:
+		double[] fitness = new double[size];
+		for (int i = 0; i < size; i++)
+			population[i] = creator != null ? clip(creator.create()) : randomPoint();
+		Arrays.fill(fitness, Double.NaN);
+		if(iterationStartListener != null)
+			iterationStartListener.execute(population, fitness, -1);
+		evaluate(population, fitness, 0);
+
+		RealVector[] trials = new RealVector[size];
+		double[] trialFitness = new double[size];
+		int k = 0;
+		while(!stoppingCriteria.stop(population, fitness, k))
+		{
+			if(iterationStartListener != null)
+				iterationStartListener.execute(population, fitness, k);
+
+			// Make a trial for each member:
+			for (int i = 0; i < size; i++)
+			{
+				int a, b, c;
+				do { a = random.nextInt(size); } while(a == i);
+				do { b = random.nextInt(size); } while(b == i || b == a);
+				do { c = random.nextInt(size); } while(c == i || c == a || c == b);
+
+				RealVector trial = population[i].copy();
+				int forced = random.nextInt(dimension); // at least one parameter comes from the mutant
+				for (int d = 0; d < dimension; d++)
+				{
+					if(d == forced || random.nextDouble() < crossoverProbability)
+					{
+						double mutant = population[a].getEntry(d) + differentialWeight*(population[b].getEntry(d) - population[c].getEntry(d));
+						trial.setEntry(d, Math.min(upper[d], Math.max(lower[d], mutant)));
+					}
+				}
+				trials[i] = trial;
+			}
+			Arrays.fill(trialFitness, Double.NaN);
+			evaluate(trials, trialFitness, 0);
+
+			// Keep the fitter of each member and its trial:
+			for (int i = 0; i < size; i++)
+			{
+				if(trialFitness[i] >= fitness[i] || Double.isNaN(fitness[i]))
+				{
+					population[i] = trials[i];
+					fitness[i] = trialFitness[i];
+				}
+			}
+			++k;
+
+			if(iterationEndListener != null)
+				iterationEndListener.execute(population, fitness, k);
+			log(k, population, fitness);
+		}
+
+		return population[fittest(fitness)];
+	}
+
+	private RealVector clip(RealVector x)
+	{
+		RealVector clipped = new ArrayRealVector(dimension);
+		for (int d = 0; d < dimension; d++)
+			clipped.setEntry(d, Math.min(upper[d], Math.max(lower[d], x.getEntry(d))));
+		return clipped;
+	}
+
+	private RealVector randomPoint()
+	{
+		RealVector v = new ArrayRealVector(dimension);
+		for (int d = 0; d < dimension; d++)
+			v.setEntry(d, lower[d] + random.nextDouble()*(upper[d] - lower[d]));
+		return v;
+	}
+}
@@ -0,0 +1,201 @@
+package ellipsis.genetics;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * A {@link VectorGeneticSolver} specialised for genomes of doubles. The whole
+ * population is held in one flat array, genome i occupying
+ * [i*dimension, (i+1)*dimension), and the next generation is bred into a
+ * second array before the two are swapped. Crossover and mutation write
+ * directly into the next generation and the population is ranked through an
+ * index array, so no objects are allocated per generation.
+ */
+public class DoubleArrayGeneticSolver
+{
+	public static interface FitnessFunction
+	{
+		/**
+		 * @param genes Holds the genome in [offset, offset+dimension); must not be modified.
+		 */
+		double fitness(double[] genes, int offset, int dimension);
+	}
+
+	private int dimension;
+	private double initialLow;
+	private double initialHigh;
+	private double mutationProbability;
+	private double parentSelectionPercent;
+	private double maxIterations;
+	private double minFitness;
+	private int eliteCount = 2;
+	private SplittableRandom rand = new SplittableRandom();
+	private FitnessFunction fitness;
+	private PrintStream logger;
+
+	/**
+	 * @see VectorGeneticSolver#VectorGeneticSolver(int, double, double, double, double, double, double)
+	 */
+	public DoubleArrayGeneticSolver(int dimension, double initialLow, double initialHigh, double mutationProbability, double parentSelectionPercent, double maxIterations, double minFitness)
+	{
+		this.dimension = dimension;
+		this.initialLow = initialLow;
+		this.initialHigh = initialHigh;
+		this.mutationProbability = mutationProbability;
+		this.parentSelectionPercent = parentSelectionPercent;
+		this.maxIterations = maxIterations;
+		this.minFitness = minFitness;
+	}
+
+	public DoubleArrayGeneticSolver withFitness(FitnessFunction fitness)
+	{
+		this.fitness = fitness;
+		return this;
+	}
+
+	public DoubleArrayGeneticSolver withEliteCount(int count)
+	{
+		this.eliteCount = count;
+		return this;
+	}
+
+	public DoubleArrayGeneticSolver withSeed(long seed)
+	{
+		this.rand = new SplittableRandom(seed);
+		return this;
+	}
+
+	public DoubleArrayGeneticSolver withRandom(SplittableRandom rand)
+	{
+		this.rand = rand;
+		return this;
+	}
+
+	public DoubleArrayGeneticSolver withLogger(PrintStream logger)
+	{
+		this.logger = logger;
+		return this;
+	}
+
+	/**
+	 * @return The fittest genome.
+	 */
+	public double[] solve(int populationSize)
+	{
+		double[] population = new double[populationSize*dimension];
+		double[] nextGeneration = new double[populationSize*dimension];
+		double[] fitness = new double[populationSize];
+		double[] nextFitness = new double[populationSize];
+		int[] order = new int[populationSize];
+		int[] sortBuffer = new int[populationSize];
+		int parentCount = Math.max(1, (int)(populationSize*parentSelectionPercent));
+
+		// Create pool:
+		for (int i = 0; i < population.length; i++)
+			population[i] = initialLow + rand.nextDouble()*(initialHigh-initialLow);
+		for (int i = 0; i < populationSize; i++)
+			fitness[i] = this.fitness.fitness(population, i*dimension, dimension);
+
+		// Progress through generations:
+		int k = 0;
+		while(!(k > maxIterations || fitness[GeneticSolver.fittest(fitness)] > minFitness))
+		{
+			// Sort according to fitness:
+			for (int i = 0; i < populationSize; i++)
+				order[i] = i;
+			sort(order, sortBuffer, fitness, 0, populationSize);
+
+			// Choose elite DNA for next population:
+			for (int i = 0; i < eliteCount; i++)
+			{
+				System.arraycopy(population, order[i]*dimension, nextGeneration, i*dimension, dimension);
+				nextFitness[i] = fitness[order[i]];
+			}
+
+			// Breed to produce children for next generation:
+			for (int i = eliteCount; i < populationSize; i++)
+			{
+				int father = order[rand.nextInt(parentCount)];
+				int mother = order[rand.nextInt(parentCount)];
+				int n = rand.nextInt(dimension);
+				System.arraycopy(population, father*dimension, nextGeneration, i*dimension, n);
+				System.arraycopy(population, mother*dimension + n, nextGeneration, i*dimension + n, dimension - n);
+				if(rand.nextDouble() < mutationProbability)
+					nextGeneration[i*dimension + rand.nextInt(dimension)] = rand.nextDouble();
+				nextFitness[i] = this.fitness.fitness(nextGeneration, i*dimension, dimension);
+			}
+
+			// Prepare for next generation:
+			double[] swap = population;
+			population = nextGeneration;
+			nextGeneration = swap;
+			swap = fitness;
+			fitness = nextFitness;
+			nextFitness = swap;
+			++k;
+
+			// Log result:
+			if(logger != null)
+			{
+				int fittest = GeneticSolver.fittest(fitness);
+				logger.print(k);
+				logger.print(": ");
+				logger.print(Arrays.toString(Arrays.copyOfRange(population, fittest*dimension, (fittest+1)*dimension)));
+				logger.print(" => ");
+				logger.println(fitness[fittest]);
+			}
+		}
+
+		// Find fittest solution:
+		int fittest = GeneticSolver.fittest(fitness);
+		return Arrays.copyOfRange(population, fittest*dimension, (fittest+1)*dimension);
+	}
+
+	/**
+	 * Stable merge sort of indices [from, to) by descending fitness.
+	 */
+	private static void sort(int[] order, int[] buffer, double[] fitness, int from, int to)
+	{
+		if(to - from < 2)
+			return;
+		int middle = (from + to) >>> 1;
+		sort(order, buffer, fitness, from, middle);
+		sort(order, buffer, fitness, middle, to);
+		if(Double.compare(fitness[order[middle-1]], fitness[order[middle]]) >= 0)
+			return; // already in order
+
+		System.arraycopy(order, from, buffer, from, to - from);
+		int left = from, right = middle;
+		for (int i = from; i < to; i++)
+		{
+			if(right >= to || (left < middle && Double.compare(fitness[buffer[left]], fitness[buffer[right]]) >= 0))
+				order[i] = buffer[left++];
+			else
+				order[i] = buffer[right++];
+		}
+	}
+
+
+	//// Test Case ////
+
+	private static double fitness(double[] genes, int offset, int dimension)
+	{
+		double sum = 0;
+		for (int i = offset; i < offset + dimension; i++)
+			sum -= genes[i]*genes[i];
+		return sum;
+	}
+
+	public static void main(String[] args)
+	{
+		DoubleArrayGeneticSolver solver = new DoubleArrayGeneticSolver(10, 0.0, 1.0, 0.5, 0.5, 10000, -0.001);
+		solver.withFitness(DoubleArrayGeneticSolver::fitness);
+		solver.withLogger(System.out);
+
+		double[] fittest = solver.solve(10);
+
+		double fitness = fitness(fittest, 0, fittest.length);
+		System.out.println(Math.sqrt(-fitness)+" : "+fitness);
+	}
+}
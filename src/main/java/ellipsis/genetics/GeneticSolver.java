@@ -1,14 +1,19 @@
 package ellipsis.genetics;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.List;
 import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.RealVector;
 
-import ellipsis.common.ArrayHelper;
 import ellipsis.common.math.Sum;
 
 public class GeneticSolver<DNA>
@@ -35,7 +40,10 @@ public class GeneticSolver<DNA>
 	
 	public static interface StoppingCriteria<DNA>
 	{
-		boolean stop(DNA[] population, int k);
+		/**
+		 * @param fitness The fitness of each member of the population.
+		 */
+		boolean stop(DNA[] population, double[] fitness, int k);
 	}
 	
 	public static interface DNASelector<DNA>
@@ -43,6 +51,19 @@ public class GeneticSolver<DNA>
 		DNA select(DNA[] population);
 	}
 	
+	/**
+	 * Evaluates many members of a population together, e.g. to share work 
+	 * between them or to compare them while they are being evaluated.
+	 */
+	public static interface PopulationEvaluator<DNA>
+	{
+		/**
+		 * Sets fitness[i] for each i >= from where fitness[i] is NaN.
+		 * Other entries hold the fitness of members already evaluated.
+		 */
+		void evaluate(DNA[] population, double[] fitness, int from);
+	}
+	
 	public static interface ProbabilityFunction
 	{
 		boolean nextValue();
@@ -50,7 +71,12 @@ public class GeneticSolver<DNA>
 	
 	public static interface IterationListener<DNA>
 	{
-		void execute(DNA[] population, int k);
+		/**
+		 * @param fitness The fitness of each member of the population, NaN 
+		 * where it has not been evaluated yet. Listeners may fill in NaN 
+		 * entries, in which case the solver will not evaluate them again.
+		 */
+		void execute(DNA[] population, double[] fitness, int k);
 	}
 
 	protected FitnessFunction<DNA> fitness;
@@ -63,6 +89,11 @@ public class GeneticSolver<DNA>
 	protected ProbabilityFunction mutationProbability;
 	protected PrintStream logger;
 	protected IterationListener<DNA> iterationStartListener, iterationEndListener;
+	protected int parallelism = 1;
+	protected ExecutorService executor;
+	protected PopulationEvaluator<DNA> populationEvaluator;
+	protected SplittableRandom random = new SplittableRandom();
+	private List<Future<?>> pendingEvaluations = new ArrayList<>();
 	
 	public GeneticSolver()
 	{
@@ -136,37 +167,124 @@ public class GeneticSolver<DNA>
 	}
 	
 	/**
-	 * 
+	 * Evaluates fitness on a {@link ForkJoinPool} of the given size that is 
+	 * created for each call to {@link #solve(Object[])}. 
+	 * Ignored if an executor has been set with {@link #withExecutor(ExecutorService)}.
+	 */
+	public GeneticSolver<DNA> withParallelism(int parallelism)
+	{
+		this.parallelism = parallelism;
+		return this;
+	}
+	
+	/**
+	 * Evaluates fitness on the given executor, e.g. a virtual thread per 
+	 * task executor. The executor is not shut down by the solver. 
+	 * The fitness function must be thread safe.
+	 */
+	public GeneticSolver<DNA> withExecutor(ExecutorService executor)
+	{
+		this.executor = executor;
+		return this;
+	}
+	
+	/**
+	 * Seeds the solver's random stream. Breeding only happens on the thread 
+	 * calling {@link #solve(Object[])}, so if every operator draws from 
+	 * {@link #getRandom()} a seeded run is reproducible whatever the parallelism.
+	 */
+	public GeneticSolver<DNA> withSeed(long seed)
+	{
+		this.random = new SplittableRandom(seed);
+		return this;
+	}
+	
+	/**
+	 * @param random E.g. split from a campaign's root stream.
+	 */
+	public GeneticSolver<DNA> withRandom(SplittableRandom random)
+	{
+		this.random = random;
+		return this;
+	}
+	
+	/**
+	 * @return The random stream for operators to draw from; not thread safe.
+	 */
+	public SplittableRandom getRandom()
+	{
+		return random;
+	}
+	
+	/**
+	 * Evaluates each generation's children together with the given evaluator
+	 * instead of one at a time with the fitness function.
+	 */
+	public GeneticSolver<DNA> withPopulationEvaluator(PopulationEvaluator<DNA> evaluator)
+	{
+		this.populationEvaluator = evaluator;
+		return this;
+	}
+	
+	/**
+	 * Evaluates the fitness of each member of the population once per generation.
+	 * Children are evaluated, in parallel if an executor or parallelism has 
+	 * been set, while the rest of the generation is bred.
 	 * @param population An empty array ready to be filled with the initial population.
 	 * @return
 	 */
-	@SuppressWarnings("unchecked")
 	public DNA solve(DNA[] population)
+	{
+		ExecutorService executor = this.executor;
+		if(executor == null && parallelism > 1)
+			this.executor = new ForkJoinPool(parallelism);
+		try
+		{
+			return evolve(population);
+		}
+		finally
+		{
+			if(executor == null && this.executor != null)
+			{
+				this.executor.shutdownNow();
+				this.executor = null;
+			}
+			pendingEvaluations.clear();
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	protected DNA evolve(DNA[] population)
 	{
 		// Create pool:
+		double[] fitness = new double[population.length];
 		for (int i = 0; i < population.length; i++) 
 		{
 			population[i] = creator.create();
 		}
+		Arrays.fill(fitness, Double.NaN);
 		
 		if(iterationStartListener != null)
-			iterationStartListener.execute(population, -1);
+			iterationStartListener.execute(population, fitness, -1);
+		evaluate(population, fitness, 0);
 		
 		// Progress through generations:
 		int k = 0;
-		while(!stoppingCriteria.stop(population, k))
+		while(!stoppingCriteria.stop(population, fitness, k))
 		{
 			if(iterationStartListener != null)
-				iterationStartListener.execute(population, k);
+				iterationStartListener.execute(population, fitness, k);
 			
 			// Sort according to fitness:
-			Arrays.sort(population, Comparator.comparingDouble(fitness::fitness).reversed());
+			rank(population, fitness);
 			
-			// Choose elite DNA for next population:
+			// Choose elite DNA for next population (elites keep their fitness):
 			DNA[] nextGeneration = (DNA[])new Object[population.length];
+			double[] nextFitness = new double[fitness.length];
 			System.arraycopy(population, 0, nextGeneration, 0, eliteCount);
+			System.arraycopy(fitness, 0, nextFitness, 0, eliteCount);
 			
-			// Breed to produce children for next generation:
+			// Breed to produce children for next generation, evaluating each as soon as it is born:
 			for(int i = eliteCount; i < population.length; ++i)
 			{
 				DNA father = parentSelector.select(population);
@@ -174,30 +292,155 @@ public class GeneticSolver<DNA>
 				nextGeneration[i] = splicer.splice(father, mother);
 				if(mutationProbability.nextValue())
 					nextGeneration[i] = mutator.mutate(nextGeneration[i]);
+				nextFitness[i] = Double.NaN;
+				if(populationEvaluator == null)
+					submitEvaluation(nextGeneration, nextFitness, i);
 			}
+			if(populationEvaluator == null)
+				awaitEvaluations();
+			else
+				populationEvaluator.evaluate(nextGeneration, nextFitness, eliteCount);
 			
 			// Prepare for next generation:
 			System.arraycopy(nextGeneration, 0, population, 0, population.length);
+			System.arraycopy(nextFitness, 0, fitness, 0, fitness.length);
 			++k;
 			
 			// Call listener:
 			if(iterationEndListener != null)
-				iterationEndListener.execute(population, k);
+				iterationEndListener.execute(population, fitness, k);
 			
 			// Log result:
-			if(logger != null)
-			{
-				DNA fittest = ArrayHelper.maxElement(population, fitness::fitness);
-				logger.print(k);
-				logger.print(": ");
-				logger.print(fittest);
-				logger.print(" => ");
-				logger.println(fitness.fitness(fittest));
-			}
+			log(k, population, fitness);
 		}
 		
 		// Find fittest solution:
-		DNA fittest = ArrayHelper.maxElement(population, fitness::fitness);
+		return population[fittest(fitness)];
+	}
+	
+	/**
+	 * Logs the fittest member of generation k if there is a logger.
+	 */
+	protected void log(int k, DNA[] population, double[] fitness)
+	{
+		if(logger != null)
+		{
+			int fittest = fittest(fitness);
+			logger.print(k);
+			logger.print(": ");
+			logger.print(population[fittest]);
+			logger.print(" => ");
+			logger.println(fitness[fittest]);
+		}
+	}
+	
+	/**
+	 * Evaluates the fitness of population members from the given index on 
+	 * that have not yet been evaluated (i.e. whose fitness is NaN).
+	 */
+	protected void evaluate(DNA[] population, double[] fitness, int from)
+	{
+		if(populationEvaluator != null)
+		{
+			populationEvaluator.evaluate(population, fitness, from);
+			return;
+		}
+		
+		for (int i = from; i < population.length; i++)
+		{
+			if(Double.isNaN(fitness[i]))
+				submitEvaluation(population, fitness, i);
+		}
+		awaitEvaluations();
+	}
+	
+	/**
+	 * Evaluates population[i] into fitness[i], on the executor if there is one.
+	 * @see #awaitEvaluations()
+	 */
+	protected void submitEvaluation(DNA[] population, double[] fitness, int i)
+	{
+		DNA dna = population[i];
+		if(executor == null)
+			fitness[i] = this.fitness.fitness(dna);
+		else
+			pendingEvaluations.add(executor.submit(() -> { fitness[i] = this.fitness.fitness(dna); }));
+	}
+	
+	/**
+	 * Waits for all submitted evaluations to complete.
+	 */
+	protected void awaitEvaluations()
+	{
+		try
+		{
+			for (Future<?> evaluation : pendingEvaluations)
+				evaluation.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e)
+		{
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+		finally
+		{
+			pendingEvaluations.clear();
+		}
+	}
+	
+	/**
+	 * Sorts the population, and the fitness array with it, from most to least fit.
+	 */
+	protected static <DNA> void rank(DNA[] population, double[] fitness)
+	{
+		Integer[] order = new Integer[population.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		Arrays.sort(order, (a, b) -> Double.compare(fitness[b], fitness[a]));
+		
+		DNA[] sortedPopulation = population.clone();
+		double[] sortedFitness = fitness.clone();
+		for (int i = 0; i < order.length; i++)
+		{
+			population[i] = sortedPopulation[order[i]];
+			fitness[i] = sortedFitness[order[i]];
+		}
+	}
+	
+	/**
+	 * @return A standard normal deviate drawn from the given stream.
+	 */
+	public static double nextGaussian(SplittableRandom random)
+	{
+		// Marsaglia polar method:
+		double u, v, s;
+		do
+		{
+			u = 2*random.nextDouble() - 1;
+			v = 2*random.nextDouble() - 1;
+			s = u*u + v*v;
+		}
+		while(s >= 1 || s == 0);
+		return u*Math.sqrt(-2*Math.log(s)/s);
+	}
+	
+	/**
+	 * @return The index of the highest fitness, the first if there are several.
+	 */
+	public static int fittest(double[] fitness)
+	{
+		int fittest = 0;
+		for (int i = 1; i < fitness.length; i++)
+		{
+			if(fitness[i] > fitness[fittest])
+				fittest = i;
+		}
 		return fittest;
 	}
 	
@@ -251,7 +494,7 @@ public class GeneticSolver<DNA>
 				.withMutationProbability(() -> rand.nextBoolean()) // 50/50 probability
 				.withMutator(GeneticSolver::mutate)
 				.withParentSelector(GeneticSolver::selectParent)
-				.withStoppingCriteria((population, k) -> k > 10000 || ArrayHelper.max(population, GeneticSolver::fitness) > -0.001)
+				.withStoppingCriteria((population, fitness, k) -> k > 10000 || fitness[fittest(fitness)] > -0.001)
 				.withLogger(System.out);
 		RealVector fittest = solver.solve(new RealVector[10]);
 		double fitness = fitness(fittest);
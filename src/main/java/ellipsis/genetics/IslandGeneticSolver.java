@@ -0,0 +1,299 @@
+package ellipsis.genetics;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import ellipsis.genetics.GeneticSolver.IterationListener;
+import ellipsis.genetics.GeneticSolver.StoppingCriteria;
+
+/**
+ * Island model genetic algorithm. The population is split between several
+ * islands, each evolved by its own {@link GeneticSolver} on its own thread.
+ * Every migration interval generations each island sends copies of its
+ * fittest members to its neighbours, where they replace the least fit
+ * members at the start of the receiving island's next generation. Islands
+ * never wait for each other; migrants are simply picked up whenever the
+ * receiving island gets to them.
+ *
+ * When any island's stopping criteria are met all islands stop.
+ */
+public class IslandGeneticSolver<DNA>
+{
+	public static enum Topology
+	{
+		/**
+		 * Island i sends migrants to island i+1.
+		 */
+		Ring,
+
+		/**
+		 * Each island sends migrants to every other island.
+		 */
+		FullyConnected
+	}
+
+	private Supplier<? extends GeneticSolver<DNA>> islandFactory;
+	private int islandCount = Runtime.getRuntime().availableProcessors();
+	private int migrationInterval = 5;
+	private int migrantCount = 1;
+	private Topology topology = Topology.Ring;
+	private PrintStream logger;
+	private ExecutorService executor;
+	private SplittableRandom random = new SplittableRandom();
+
+	private volatile boolean stopped;
+	private List<Island> islands;
+
+	/**
+	 * @param islandFactory Creates a fully configured solver for each island.
+	 * Operators shared between islands must be thread safe.
+	 */
+	public IslandGeneticSolver(Supplier<? extends GeneticSolver<DNA>> islandFactory)
+	{
+		this.islandFactory = islandFactory;
+	}
+
+	public IslandGeneticSolver<DNA> withIslands(int count)
+	{
+		this.islandCount = count;
+		return this;
+	}
+
+	/**
+	 * @param generations Number of generations between migrations.
+	 */
+	public IslandGeneticSolver<DNA> withMigrationInterval(int generations)
+	{
+		this.migrationInterval = generations;
+		return this;
+	}
+
+	/**
+	 * @param count Number of elites sent to each neighbour at each migration.
+	 */
+	public IslandGeneticSolver<DNA> withMigrantCount(int count)
+	{
+		this.migrantCount = count;
+		return this;
+	}
+
+	public IslandGeneticSolver<DNA> withTopology(Topology topology)
+	{
+		this.topology = topology;
+		return this;
+	}
+
+	public IslandGeneticSolver<DNA> withLogger(PrintStream logger)
+	{
+		this.logger = logger;
+		return this;
+	}
+
+	/**
+	 * Seeds the campaign; each island's solver is given its own stream split
+	 * from it in island order. Islands are reproducible until the first
+	 * migration, after which results depend on when migrants arrive.
+	 */
+	public IslandGeneticSolver<DNA> withSeed(long seed)
+	{
+		this.random = new SplittableRandom(seed);
+		return this;
+	}
+
+	/**
+	 * Runs islands on the given executor, which must be able to run all
+	 * islands at once. By default a thread is created for each island.
+	 */
+	public IslandGeneticSolver<DNA> withExecutor(ExecutorService executor)
+	{
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * @param population An empty array ready to be filled with the initial
+	 * population, which is split evenly between the islands.
+	 * On return it holds the islands' final populations.
+	 * @return The fittest member of any island.
+	 */
+	public DNA solve(DNA[] population)
+	{
+		int count = Math.max(1, Math.min(islandCount, population.length));
+		stopped = false;
+		islands = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+		{
+			int from = i*population.length/count;
+			int to = (i+1)*population.length/count;
+			islands.add(new Island(i, Arrays.copyOfRange(population, from, to)));
+		}
+
+		ExecutorService pool = executor != null ? executor : Executors.newFixedThreadPool(count, r ->
+		{
+			Thread thread = new Thread(r, "island");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try
+		{
+			List<Future<?>> running = new ArrayList<>(count);
+			for (Island island : islands)
+				running.add(pool.submit(island::evolve));
+			for (Future<?> island : running)
+				island.get();
+		}
+		catch (InterruptedException e)
+		{
+			stopped = true;
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e)
+		{
+			stopped = true;
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+		finally
+		{
+			if(pool != executor)
+				pool.shutdownNow();
+		}
+
+		// Gather final populations:
+		DNA fittest = null;
+		double fittestFitness = Double.NEGATIVE_INFINITY;
+		int offset = 0;
+		for (Island island : islands)
+		{
+			System.arraycopy(island.population, 0, population, offset, island.population.length);
+			offset += island.population.length;
+			int best = GeneticSolver.fittest(island.fitness);
+			if(fittest == null || island.fitness[best] > fittestFitness)
+			{
+				fittest = island.population[best];
+				fittestFitness = island.fitness[best];
+			}
+		}
+		return fittest;
+	}
+
+	private List<Island> neighbours(int index)
+	{
+		List<Island> neighbours = new ArrayList<>();
+		for (int i = 1; i < islands.size(); i++)
+		{
+			neighbours.add(islands.get((index + i)%islands.size()));
+			if(topology == Topology.Ring)
+				break;
+		}
+		return neighbours;
+	}
+
+	private static class Migrant<DNA>
+	{
+		final DNA dna;
+		final double fitness;
+
+		Migrant(DNA dna, double fitness)
+		{
+			this.dna = dna;
+			this.fitness = fitness;
+		}
+	}
+
+	private class Island
+	{
+		final int index;
+		final GeneticSolver<DNA> solver;
+		final DNA[] population;
+		double[] fitness;
+		final Queue<Migrant<DNA>> inbox = new ConcurrentLinkedQueue<>();
+
+		Island(int index, DNA[] population)
+		{
+			this.index = index;
+			this.population = population;
+			this.solver = islandFactory.get();
+			solver.withRandom(random.split());
+
+			// Stop all islands when one stops:
+			StoppingCriteria<DNA> stoppingCriteria = solver.stoppingCriteria;
+			solver.withStoppingCriteria((p, f, k) ->
+			{
+				fitness = f;
+				if(stopped)
+					return true;
+				if(stoppingCriteria.stop(p, f, k))
+					stopped = true;
+				return stopped;
+			});
+
+			// Exchange migrants before ranking:
+			IterationListener<DNA> startListener = solver.iterationStartListener;
+			solver.withIterationStartListener((p, f, k) ->
+			{
+				if(startListener != null)
+					startListener.execute(p, f, k);
+				if(k >= 0)
+					migrate(p, f, k);
+			});
+
+			// Log from the island as a single line:
+			IterationListener<DNA> endListener = solver.iterationEndListener;
+			solver.withLogger(null);
+			solver.withIterationEndListener((p, f, k) ->
+			{
+				if(endListener != null)
+					endListener.execute(p, f, k);
+				if(logger != null)
+				{
+					int best = GeneticSolver.fittest(f);
+					logger.println("island "+index+", "+k+": "+p[best]+" => "+f[best]);
+				}
+			});
+		}
+
+		void evolve()
+		{
+			solver.solve(population);
+		}
+
+		private void migrate(DNA[] population, double[] fitness, int k)
+		{
+			Integer[] order = new Integer[population.length];
+			for (int i = 0; i < order.length; i++)
+				order[i] = i;
+			Arrays.sort(order, (a, b) -> Double.compare(fitness[b], fitness[a]));
+
+			// Send copies of the fittest:
+			if(k > 0 && k%migrationInterval == 0)
+			{
+				for (Island neighbour : neighbours(index))
+				{
+					for (int i = 0; i < Math.min(migrantCount, order.length); i++)
+						neighbour.inbox.add(new Migrant<>(population[order[i]], fitness[order[i]]));
+				}
+			}
+
+			// Replace the least fit with waiting immigrants:
+			Migrant<DNA> migrant;
+			for (int i = order.length-1; i >= solver.eliteCount && (migrant = inbox.poll()) != null; i--)
+			{
+				population[order[i]] = migrant.dna;
+				fitness[order[i]] = migrant.fitness;
+			}
+		}
+	}
+}
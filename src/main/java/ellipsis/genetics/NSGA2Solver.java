@@ -0,0 +1,289 @@
+package ellipsis.genetics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Multi-objective genetic algorithm, NSGA-II. Each generation breeds as
+ * many children as there are members, then keeps the best half of parents
+ * and children ranked first by Pareto front and then by crowding distance,
+ * so that the population spreads along the trade-off between objectives
+ * instead of converging on one compromise.
+ *
+ * Configured like a {@link GeneticSolver}, except that an objective
+ * function replaces the fitness function and parents are chosen by
+ * crowded tournament rather than a parent selector. All objectives are
+ * maximised. The fitness passed to the stopping criteria, listeners and
+ * logger is -(front index) plus a crowding bonus in [0, 1), so
+ * {@link GeneticSolver#fittest(double[])} picks the least crowded member of
+ * the first front.
+ */
+public class NSGA2Solver<DNA> extends GeneticSolver<DNA>
+{
+	public static interface ObjectiveFunction<DNA>
+	{
+		/**
+		 * @return The objectives to maximise; the same number for all DNA.
+		 */
+		double[] objectives(DNA dna);
+	}
+
+	/**
+	 * A member of the population with its objectives.
+	 */
+	public static class Individual<DNA>
+	{
+		public final DNA dna;
+		public final double[] objectives;
+		int front;
+		double crowding;
+
+		Individual(DNA dna, double[] objectives)
+		{
+			this.dna = dna;
+			this.objectives = objectives;
+		}
+
+		@Override
+		public String toString()
+		{
+			return dna+" => "+Arrays.toString(objectives);
+		}
+	}
+
+	private ObjectiveFunction<DNA> objectives;
+	private List<Individual<DNA>> individuals = new ArrayList<>();
+
+	public NSGA2Solver<DNA> withObjectives(ObjectiveFunction<DNA> objectives)
+	{
+		this.objectives = objectives;
+		return this;
+	}
+
+	/**
+	 * @return The non-dominated members of the final population.
+	 */
+	public List<Individual<DNA>> getParetoFront()
+	{
+		List<Individual<DNA>> front = new ArrayList<>();
+		for (Individual<DNA> individual : individuals)
+		{
+			if(individual.front == 0)
+				front.add(individual);
+		}
+		return front;
+	}
+
+	/**
+	 * @return The least crowded member of the first front.
+	 */
+	@Override
+	protected DNA evolve(DNA[] population)
+	{
+		int size = population.length;
+
+		// Create pool:
+		for (int i = 0; i < size; i++)
+			population[i] = creator.create();
+		double[] fitness = new double[size];
+		Arrays.fill(fitness, Double.NaN);
+		if(iterationStartListener != null)
+			iterationStartListener.execute(population, fitness, -1);
+		individuals = evaluateObjectives(population);
+		sort(individuals);
+		scalarise(individuals, population, fitness);
+
+		int k = 0;
+		while(!stoppingCriteria.stop(population, fitness, k))
+		{
+			if(iterationStartListener != null)
+				iterationStartListener.execute(population, fitness, k);
+
+			// Breed children by crowded tournament:
+			@SuppressWarnings("unchecked")
+			DNA[] children = (DNA[])new Object[size];
+			for (int i = 0; i < size; i++)
+			{
+				DNA child = splicer.splice(tournament().dna, tournament().dna);
+				if(mutationProbability.nextValue())
+					child = mutator.mutate(child);
+				children[i] = child;
+			}
+
+			// Keep the best of parents and children:
+			List<Individual<DNA>> combined = new ArrayList<>(individuals);
+			combined.addAll(evaluateObjectives(children));
+			sort(combined);
+			individuals = new ArrayList<>(combined.subList(0, size));
+			scalarise(individuals, population, fitness);
+			++k;
+
+			if(iterationEndListener != null)
+				iterationEndListener.execute(population, fitness, k);
+			log(k, population, fitness);
+		}
+
+		return population[fittest(fitness)];
+	}
+
+	private Individual<DNA> tournament()
+	{
+		Individual<DNA> a = individuals.get(random.nextInt(individuals.size()));
+		Individual<DNA> b = individuals.get(random.nextInt(individuals.size()));
+		return crowdedCompare(a, b) <= 0 ? a : b;
+	}
+
+	/**
+	 * @return Negative if a is better than b: on an earlier front or, on the same front, less crowded.
+	 */
+	private static int crowdedCompare(Individual<?> a, Individual<?> b)
+	{
+		if(a.front != b.front)
+			return Integer.compare(a.front, b.front);
+		return Double.compare(b.crowding, a.crowding);
+	}
+
+	/**
+	 * Evaluates objectives, on the executor if there is one.
+	 */
+	private List<Individual<DNA>> evaluateObjectives(DNA[] dna)
+	{
+		double[][] values = new double[dna.length][];
+		if(executor == null)
+		{
+			for (int i = 0; i < dna.length; i++)
+				values[i] = objectives.objectives(dna[i]);
+		}
+		else
+		{
+			List<Future<?>> pending = new ArrayList<>(dna.length);
+			for (int i = 0; i < dna.length; i++)
+			{
+				final int index = i;
+				pending.add(executor.submit(() -> { values[index] = objectives.objectives(dna[index]); }));
+			}
+			try
+			{
+				for (Future<?> evaluation : pending)
+					evaluation.get();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+			catch (ExecutionException e)
+			{
+				if(e.getCause() instanceof RuntimeException)
+					throw (RuntimeException)e.getCause();
+				throw new RuntimeException(e.getCause());
+			}
+		}
+
+		List<Individual<DNA>> evaluated = new ArrayList<>(dna.length);
+		for (int i = 0; i < dna.length; i++)
+			evaluated.add(new Individual<>(dna[i], values[i]));
+		return evaluated;
+	}
+
+	/**
+	 * Assigns fronts and crowding distances, then sorts best first.
+	 */
+	static <DNA> void sort(List<Individual<DNA>> individuals)
+	{
+		// Fast non-dominated sort:
+		int n = individuals.size();
+		List<List<Integer>> dominated = new ArrayList<>(n); // those each individual dominates
+		int[] dominationCount = new int[n];
+		List<Integer> front = new ArrayList<>();
+		for (int p = 0; p < n; p++)
+		{
+			dominated.add(new ArrayList<>());
+			for (int q = 0; q < n; q++)
+			{
+				if(dominates(individuals.get(p), individuals.get(q)))
+					dominated.get(p).add(q);
+				else if(dominates(individuals.get(q), individuals.get(p)))
+					++dominationCount[p];
+			}
+			if(dominationCount[p] == 0)
+				front.add(p);
+		}
+
+		int rank = 0;
+		while(!front.isEmpty())
+		{
+			List<Individual<DNA>> members = new ArrayList<>(front.size());
+			List<Integer> next = new ArrayList<>();
+			for (int p : front)
+			{
+				individuals.get(p).front = rank;
+				members.add(individuals.get(p));
+				for (int q : dominated.get(p))
+				{
+					if(--dominationCount[q] == 0)
+						next.add(q);
+				}
+			}
+			crowding(members);
+			front = next;
+			++rank;
+		}
+
+		individuals.sort(NSGA2Solver::crowdedCompare);
+	}
+
+	private static boolean dominates(Individual<?> a, Individual<?> b)
+	{
+		boolean better = false;
+		for (int m = 0; m < a.objectives.length; m++)
+		{
+			if(a.objectives[m] < b.objectives[m])
+				return false;
+			if(a.objectives[m] > b.objectives[m])
+				better = true;
+		}
+		return better;
+	}
+
+	/**
+	 * Sum over objectives of the normalised distance between each member's neighbours on the front.
+	 */
+	private static <DNA> void crowding(List<Individual<DNA>> front)
+	{
+		for (Individual<DNA> individual : front)
+			individual.crowding = 0;
+		if(front.isEmpty())
+			return;
+
+		List<Individual<DNA>> sorted = new ArrayList<>(front);
+		for (int m = 0; m < front.get(0).objectives.length; m++)
+		{
+			final int objective = m;
+			sorted.sort((a, b) -> Double.compare(a.objectives[objective], b.objectives[objective]));
+			double min = sorted.get(0).objectives[m];
+			double max = sorted.get(sorted.size()-1).objectives[m];
+			sorted.get(0).crowding = Double.POSITIVE_INFINITY;
+			sorted.get(sorted.size()-1).crowding = Double.POSITIVE_INFINITY;
+			if(max > min)
+			{
+				for (int i = 1; i < sorted.size()-1; i++)
+					sorted.get(i).crowding += (sorted.get(i+1).objectives[m] - sorted.get(i-1).objectives[m])/(max - min);
+			}
+		}
+	}
+
+	private static <DNA> void scalarise(List<Individual<DNA>> individuals, DNA[] population, double[] fitness)
+	{
+		for (int i = 0; i < population.length; i++)
+		{
+			Individual<DNA> individual = individuals.get(i);
+			population[i] = individual.dna;
+			double crowding = individual.crowding;
+			fitness[i] = -individual.front + (Double.isInfinite(crowding) ? 0.999 : 0.999*crowding/(1 + crowding));
+		}
+	}
+}
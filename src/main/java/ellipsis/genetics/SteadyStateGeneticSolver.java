@@ -0,0 +1,179 @@
+package ellipsis.genetics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Steady state genetic algorithm for fitness functions with very uneven
+ * evaluation times. Up to parallelism children are evaluated at once and,
+ * as soon as any finishes, it replaces the least fit member of the
+ * population (if it is fitter) and another child is bred from the current
+ * population. There is no generation barrier so no worker waits for the
+ * slowest evaluation.
+ *
+ * The population is kept sorted from most to least fit so the usual parent
+ * selectors can be used. The generation number k passed to the stopping
+ * criteria, listeners and logger counts one generation for each
+ * (population size - elite count) completed child evaluations, the same
+ * number of evaluations as a generation of {@link GeneticSolver}.
+ * Elites need no special treatment as only the least fit is ever replaced.
+ * Children are bred in the order evaluations finish, so unlike
+ * {@link GeneticSolver} a seeded run is only reproducible with a
+ * parallelism of 1.
+ */
+public class SteadyStateGeneticSolver<DNA> extends GeneticSolver<DNA>
+{
+	public SteadyStateGeneticSolver()
+	{
+	}
+
+	/**
+	 * Copies the operators, stopping criteria, elite count, logger,
+	 * listeners, parallelism, executor, population evaluator and random stream of the given
+	 * solver. The population evaluator is only used for the initial population.
+	 */
+	public SteadyStateGeneticSolver(GeneticSolver<DNA> configuration)
+	{
+		fitness = configuration.fitness;
+		splicer = configuration.splicer;
+		mutator = configuration.mutator;
+		creator = configuration.creator;
+		stoppingCriteria = configuration.stoppingCriteria;
+		eliteCount = configuration.eliteCount;
+		parentSelector = configuration.parentSelector;
+		mutationProbability = configuration.mutationProbability;
+		logger = configuration.logger;
+		iterationStartListener = configuration.iterationStartListener;
+		iterationEndListener = configuration.iterationEndListener;
+		parallelism = configuration.parallelism;
+		executor = configuration.executor;
+		populationEvaluator = configuration.populationEvaluator;
+		random = configuration.random;
+	}
+
+	@Override
+	public DNA solve(DNA[] population)
+	{
+		// Evaluations are always submitted to an executor so that they can complete out of order:
+		ExecutorService configured = this.executor;
+		ExecutorService executor = configured != null ? configured : new ForkJoinPool(Math.max(1, parallelism));
+		this.executor = executor;
+		try
+		{
+			return evolve(population);
+		}
+		finally
+		{
+			this.executor = configured;
+			if(configured == null)
+				executor.shutdownNow();
+		}
+	}
+
+	@Override
+	protected DNA evolve(DNA[] population)
+	{
+		// Create and evaluate the initial pool:
+		double[] fitness = new double[population.length];
+		for (int i = 0; i < population.length; i++)
+		{
+			population[i] = creator.create();
+			fitness[i] = Double.NaN;
+		}
+		if(iterationStartListener != null)
+			iterationStartListener.execute(population, fitness, -1);
+		evaluate(population, fitness, 0);
+		rank(population, fitness);
+
+		CompletionService<Double> completed = new ExecutorCompletionService<>(executor);
+		Map<Future<Double>, DNA> inFlight = new HashMap<>();
+		int childrenPerGeneration = Math.max(1, population.length - eliteCount);
+		long evaluations = 0;
+		int k = 0;
+		try
+		{
+			if(!stoppingCriteria.stop(population, fitness, k))
+			{
+				if(iterationStartListener != null)
+					iterationStartListener.execute(population, fitness, k);
+				for (int i = 0; i < Math.max(1, parallelism); i++)
+					breed(population, completed, inFlight);
+			}
+
+			while(!inFlight.isEmpty())
+			{
+				// Insert the next child to finish:
+				Future<Double> result = completed.take();
+				DNA child = inFlight.remove(result);
+				insert(population, fitness, child, result.get());
+
+				if(++evaluations%childrenPerGeneration == 0)
+				{
+					++k;
+					if(iterationEndListener != null)
+						iterationEndListener.execute(population, fitness, k);
+					log(k, population, fitness);
+					if(stoppingCriteria.stop(population, fitness, k))
+						break;
+					if(iterationStartListener != null)
+						iterationStartListener.execute(population, fitness, k);
+				}
+
+				breed(population, completed, inFlight);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e)
+		{
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+		finally
+		{
+			for (Future<Double> f : inFlight.keySet())
+				f.cancel(true);
+		}
+
+		return population[0];
+	}
+
+	private void breed(DNA[] population, CompletionService<Double> completed, Map<Future<Double>, DNA> inFlight)
+	{
+		DNA father = parentSelector.select(population);
+		DNA mother = parentSelector.select(population);
+		DNA child = splicer.splice(father, mother);
+		if(mutationProbability.nextValue())
+			child = mutator.mutate(child);
+		final DNA dna = child;
+		inFlight.put(completed.submit(() -> fitness.fitness(dna)), child);
+	}
+
+	/**
+	 * Replaces the least fit member if the child is fitter, keeping the population sorted.
+	 */
+	private static <DNA> void insert(DNA[] population, double[] fitness, DNA child, double childFitness)
+	{
+		int i = population.length-1;
+		if(!(childFitness > fitness[i]))
+			return;
+		while(i > 0 && childFitness > fitness[i-1])
+		{
+			population[i] = population[i-1];
+			fitness[i] = fitness[i-1];
+			--i;
+		}
+		population[i] = child;
+		fitness[i] = childFitness;
+	}
+}
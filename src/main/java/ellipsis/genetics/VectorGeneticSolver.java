@@ -1,11 +1,8 @@
 package ellipsis.genetics;
 
-import java.util.Random;
-
 import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.RealVector;
 
-import ellipsis.common.ArrayHelper;
 import ellipsis.common.math.Sum;
 import ellipsis.genetics.GeneticSolver.Creator;
 import ellipsis.genetics.GeneticSolver.GeneSplicer;
@@ -17,7 +14,6 @@ public class VectorGeneticSolver extends GeneticSolver<RealVector>
 	private int dimension;
 	private double initialLow;
 	private double initialHigh;
-	private Random rand = new Random();
 
 	/**
 	 * 
@@ -38,10 +34,10 @@ public class VectorGeneticSolver extends GeneticSolver<RealVector>
 		withCreator(this);
 		withEliteCount(2);
 		withGeneSplicer(this);
-		withMutationProbability(() -> rand.nextDouble() < mutationProbability);
+		withMutationProbability(() -> random.nextDouble() < mutationProbability);
 		withMutator(this);
-		withParentSelector(population -> population[rand.nextInt((int)(population.length*parentSelectionPercent))]);
-		withStoppingCriteria((population, k) -> k > maxIterations || ArrayHelper.max(population, fitness::fitness) > minFitness);
+		withParentSelector(population -> population[random.nextInt((int)(population.length*parentSelectionPercent))]);
+		withStoppingCriteria((population, fitness, k) -> k > maxIterations || fitness[fittest(fitness)] > minFitness);
 	}
 	
 	/**
@@ -68,7 +64,7 @@ public class VectorGeneticSolver extends GeneticSolver<RealVector>
 		RealVector v = new ArrayRealVector(dimension);
 		for (int i = 0; i < dimension; i++) 
 		{
-			v.setEntry(i, initialLow + rand.nextDouble()*(initialHigh-initialLow));
+			v.setEntry(i, initialLow + random.nextDouble()*(initialHigh-initialLow));
 		}
 		return v;
 	}
@@ -76,7 +72,7 @@ public class VectorGeneticSolver extends GeneticSolver<RealVector>
 	@Override
 	public RealVector splice(RealVector father, RealVector mother) 
 	{
-		int n = rand.nextInt(dimension);
+		int n = random.nextInt(dimension);
 		return father.getSubVector(0, n).append(mother.getSubVector(n, dimension-n));
 	}
 
@@ -84,8 +80,8 @@ public class VectorGeneticSolver extends GeneticSolver<RealVector>
 	public RealVector mutate(RealVector v) 
 	{
 		RealVector v2 = new ArrayRealVector(v);
-		int i = rand.nextInt(v.getDimension());
-		v2.setEntry(i, rand.nextDouble());
+		int i = random.nextInt(v.getDimension());
+		v2.setEntry(i, random.nextDouble());
 		return v2;
 	}
 	
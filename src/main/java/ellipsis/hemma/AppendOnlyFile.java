@@ -0,0 +1,92 @@
+package ellipsis.hemma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * A text file of records, one per line, that are only ever appended, e.g.
+ * results kept across runs. A process killed part way through a write can
+ * leave the last line incomplete; {@link #load(Consumer)} removes it so
+ * that the next record appended starts on a line of its own.
+ * Appends are thread safe.
+ */
+public class AppendOnlyFile
+{
+	private final File file;
+
+	public AppendOnlyFile(File file)
+	{
+		this.file = file;
+	}
+
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * Removes an incomplete last line, then passes each line to the consumer
+	 * in order. Does nothing if the file doesn't exist.
+	 */
+	public synchronized void load(Consumer<String> consumer)
+	{
+		if(!file.exists())
+			return;
+
+		// Drop a final line cut short by an interrupted write:
+		try(RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+		{
+			long length = raf.length();
+			while(length > 0)
+			{
+				raf.seek(length-1);
+				if(raf.read() == '\n')
+					break;
+				--length;
+			}
+			raf.setLength(length);
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)))
+		{
+			String line;
+			while((line = reader.readLine()) != null)
+				consumer.accept(line);
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Appends the line, creating the file and its directory if necessary.
+	 * @param line Without the line terminator.
+	 */
+	public synchronized void append(String line)
+	{
+		File parent = file.getAbsoluteFile().getParentFile();
+		if(parent != null)
+			parent.mkdirs();
+		try(OutputStream out = new FileOutputStream(file, true))
+		{
+			out.write((line+'\n').getBytes(StandardCharsets.UTF_8));
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package ellipsis.hemma;
+
+import java.util.Collection;
+
+/**
+ * Decides whether agents of a network read neighbour values from the
+ * cache filled by variable updates (the default) or directly from the
+ * neighbouring agents, e.g. while evaluating the network wide Lagrange
+ * function. Each network owns its own context so that simulations running
+ * in the same JVM do not interfere.
+ *
+ * The setting is held per thread so that parts of one network executed on
+ * different threads (see shards) do not interfere either; code that hands
+ * an evaluation to another thread must pass the setting on.
+ */
+public class EvaluationContext
+{
+	private final ThreadLocal<Boolean> useCache = ThreadLocal.withInitial(() -> true);
+
+	public boolean isUsingCache()
+	{
+		return useCache.get();
+	}
+
+	/**
+	 * Applies to the calling thread only.
+	 */
+	public void setUseCache(boolean b)
+	{
+		useCache.set(b);
+	}
+
+	/**
+	 * @return The context shared by the given agents, first giving them a
+	 * new shared context if they don't already share one.
+	 */
+	public static EvaluationContext of(Collection<? extends Agent> agents)
+	{
+		EvaluationContext context = null;
+		for (Agent agent : agents)
+		{
+			EvaluationContext agentContext = agent.getHemmaProtocol().getContext();
+			if(context == null)
+				context = agentContext;
+			else if(agentContext != context)
+			{
+				context = new EvaluationContext();
+				for (Agent a : agents)
+					a.getHemmaProtocol().setContext(context);
+				break;
+			}
+		}
+		return context != null ? context : new EvaluationContext();
+	}
+}
@@ -7,12 +7,15 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintStream;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Queue;
-import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import ellipsis.hemma.PhaseTimers.Phase;
 
 /**
  * Implementation of the HEMMA protocol.
@@ -21,8 +24,6 @@ import java.util.Set;
  */
 public class HEMMAProtocol
 {
-	public static boolean useCache = true; // FIXME testing code
-
 	private static final int PARAM_COUNT = 11;
 	
 	private static final int PARAM_V = 0;
@@ -39,6 +40,12 @@ public class HEMMAProtocol
 	
 	private static final int PARAM_CONVERGENCE = 8;
 	
+	/**
+	 * A neighbour's values as of its last variable update. Only handed out by
+	 * {@link HEMMAProtocol#neighbourSet()} while the context is using the
+	 * cache, so the choice between cached and live values is made once per
+	 * sweep over the neighbours rather than by every getter.
+	 */
 	static class AgentCache implements IAgent
 	{
 		private double[] params;
@@ -67,75 +74,20 @@ public class HEMMAProtocol
 		}
 		public String toString() { return "CACHE:"+name; }
 	
-		public double getV()                         
-		{
-			if(useCache)
-				return (double) params[PARAM_V];
-			else
-				return agent.getV(); 
-		}          
+		public double getV()                        { return params[PARAM_V]; }
+		public double getvMinus()                   { return params[PARAM_V_MINUS]; }
+		public double getPower()                    { return params[PARAM_POWER]; }
 
-		public double getvMinus()                    
-		{ 
-			if(useCache)
-				return (double) params[PARAM_V_MINUS];
-			else
-				return agent.getvMinus(); 
-		}
-		public double getPower()                     
-		{ 
-			if(useCache)
-				return (double) params[PARAM_POWER];
-			else
-				return agent.getPower(); 
-		}             
+		public double getLambdaPlus()               { return params[PARAM_LAMBDA_PLUS]; }
+		public double getLambdaMinus()              { return params[PARAM_LAMBDA_MINUS]; }
 
-		public double getLambdaPlus()                
-		{ 
-			if(useCache)
-				return (double) params[PARAM_LAMBDA_PLUS]; 
-			else
-				return agent.getLambdaPlus(); 
-		}        
-		public double getLambdaMinus()               
-		{ 
-			if(useCache)
-				return (double) params[PARAM_LAMBDA_MINUS];
-			else
-				return agent.getLambdaMinus(); 
-		}       
-
-		public double getAlpha()                     
-		{ 
-			if(useCache)
-				return (double) params[PARAM_ALPHA];
-			else
-				return agent.getAlpha(); 
-		}             
+		public double getAlpha()                    { return params[PARAM_ALPHA]; }
 
-		public double gPlus()                        
-		{ 
-			if(useCache)
-				return (double) params[PARAM_G_PLUS];
-			else
-				return agent.gPlus();
-		}                     
-		public double gMinus()                       
-		{ 
-			if(useCache)
-				return (double) params[PARAM_G_MINUS];
-			else
-				return agent.gMinus();
-		}
+		public double gPlus()                       { return params[PARAM_G_PLUS]; }
+		public double gMinus()                      { return params[PARAM_G_MINUS]; }
 		
 		@Override
-		public double getAverageConvergenceApproximation() 
-		{
-			if(useCache)
-				return (double) params[PARAM_CONVERGENCE];
-			else
-				return agent.getAverageConvergenceApproximation();
-		}
+		public double getAverageConvergenceApproximation() { return params[PARAM_CONVERGENCE]; }
 		
 
 		public HEMMAProtocol getHemmaProtocol() 
@@ -188,6 +140,16 @@ public class HEMMAProtocol
 			this.parameters = params;
 		}
 		
+		public HEMMAProtocol getSource() 
+		{
+			return source;
+		}
+		
+		public HEMMAMessageType getType() 
+		{
+			return type;
+		}
+		
 		@Override
 		public String toString() 
 		{
@@ -195,7 +157,19 @@ public class HEMMAProtocol
 		}
 	}
 	
-	private static PrintStream log;
+	/**
+	 * Transport for variable updates to a neighbour that is not executed 
+	 * on the same thread. Messages sent through a channel must be 
+	 * passed to {@link HEMMAProtocol#deliver(HEMMAMessage)} of the 
+	 * destination by the thread executing the destination agent.
+	 */
+	public static interface VariableUpdateChannel
+	{
+		void send(HEMMAMessage message, HEMMAProtocol destination);
+	}
+	
+	private static final PrintStream log;
+	static
 	{
 		try
 		{
@@ -213,12 +187,18 @@ public class HEMMAProtocol
 	private int k; // iteration
 	private HEMMAState state = Idle;
 	private Queue<HEMMAMessage> messageQueue = new LinkedList<>();
-	private Set<IAgent> connections = new HashSet<>(); // 'Physical connections'.
-	private Set<HEMMAProtocol> neighbours = new HashSet<>(); // Discovered neighbours.
-	private Map<HEMMAProtocol, IAgent> neighbourCache = new HashMap<>(); // Cached values from variable updates.
+	// Insertion ordered so that iteration, and so the simulation, is reproducible:
+	private Set<IAgent> connections = new LinkedHashSet<>(); // 'Physical connections'.
+	private Set<HEMMAProtocol> neighbours = new LinkedHashSet<>(); // Discovered neighbours.
+	private Map<HEMMAProtocol, IAgent> neighbourCache = new LinkedHashMap<>(); // Cached values from variable updates.
 	private Agent agent;
-	private Set<HEMMAProtocol> finishedNeighbours = new HashSet<>();
+	private Set<HEMMAProtocol> finishedNeighbours = new LinkedHashSet<>();
 	private HEMMAState preDisableState; // state before disabling ready to start up again
+	private Map<HEMMAProtocol, VariableUpdateChannel> remoteChannels; // neighbours executed on other threads
+	private EvaluationContext context = new EvaluationContext();
+	private final AtomicLongArray messageCounts = new AtomicLongArray(HEMMAMessageType.values().length); // received, by type
+	private final PhaseTimers timers = PhaseTimers.ENABLED ? new PhaseTimers() : null;
+	private ProtocolEvents.SessionEvent session; // while recorded
 	
 	public HEMMAProtocol(Agent agent)
 	{
@@ -227,6 +207,7 @@ public class HEMMAProtocol
 	
 	public HEMMAMessage message(HEMMAMessage message) 
 	{
+		received(message);
 		switch(message.type)
 		{
 		// Synchronous messages:
@@ -266,7 +247,7 @@ public class HEMMAProtocol
 		// Send IN in response:
 		log("Sending IN response to "+neighbour.agent.getName());
 		HEMMAMessage message = new HEMMAMessage(this, HEMMAMessageType.IdentifyNeighbour, 1);
-		neighbour.message(message);
+		send(neighbour, message);
 	}
 	
 	/**
@@ -302,7 +283,7 @@ public class HEMMAProtocol
 		case Idle:
 		{
 			transitionState(SessionInitialisation);
-			neighbourCache = new HashMap<>();
+			neighbourCache = new LinkedHashMap<>();
 			
 			if(!sender.equals(this))
 			{
@@ -311,7 +292,7 @@ public class HEMMAProtocol
 				
 				// Send an accept response to the sender of the SS request (if applicable):
 				log("sending SS accept message to "+sender.agent.getName());
-				sender.message(new HEMMAMessage(this, HEMMAMessageType.StartSession_accepted, parameters(sender.agent)));
+				send(sender, new HEMMAMessage(this, HEMMAMessageType.StartSession_accepted, parameters(sender.agent)));
 				
 				log("forwarding SS message to neighbours");
 			}
@@ -329,7 +310,7 @@ public class HEMMAProtocol
 		case SessionExecution:
 		{
 			// Respond to SS request with acceptance:
-			sender.message(new HEMMAMessage(this, HEMMAMessageType.StartSession_accepted, parameters(sender.agent)));
+			send(sender, new HEMMAMessage(this, HEMMAMessageType.StartSession_accepted, parameters(sender.agent)));
 			log("sending SS accept message to "+sender.agent.getName());
 			break;
 		}
@@ -341,6 +322,16 @@ public class HEMMAProtocol
 	protected void transitionState(HEMMAState newState) 
 	{
 		log("state transition: "+state+" to "+newState);
+		ProtocolEvents.stateTransition(agent.getName(), state, newState, k);
+		if(state == Idle && (newState == SessionInitialisation || newState == HEMMAState.SessionExecution))
+			session = ProtocolEvents.sessionStarted(agent.getName(), k);
+		if(newState == HEMMAState.SessionExecution)
+			ProtocolEvents.sessionExecuting(session, k);
+		else if(newState == Idle && session != null)
+		{
+			ProtocolEvents.sessionEnded(session, state == HEMMAState.SessionComplete, k);
+			session = null;
+		}
 		state = newState;
 	}
 	
@@ -392,7 +383,7 @@ public class HEMMAProtocol
 				transitionState(HEMMAState.SessionComplete);
 				if(sender != this)
 				{
-					sender.message(new HEMMAMessage(this, HEMMAMessageType.FinishSession_accepted));
+					send(sender, new HEMMAMessage(this, HEMMAMessageType.FinishSession_accepted));
 					log("Forwarding FS message to neighbours.");
 					addFinishedNeighbour(sender);
 				}
@@ -407,7 +398,8 @@ public class HEMMAProtocol
 				if(sender != this)
 				{
 					log("rejecting FS");
-					sender.message(new HEMMAMessage(this, HEMMAMessageType.FinishSession_reject));
+					ProtocolEvents.finishSessionRejected(agent.getName(), sender.agent.getName(), k);
+					send(sender, new HEMMAMessage(this, HEMMAMessageType.FinishSession_reject));
 				}
 			}
 			
@@ -448,7 +440,9 @@ public class HEMMAProtocol
 		updateCache(message);
 		
 		// Respond with this agent's state:
-		return new HEMMAMessage(this, HEMMAMessageType.VariableUpdate_response, parameters(message.source.agent));
+		HEMMAMessage response = new HEMMAMessage(this, HEMMAMessageType.VariableUpdate_response, parameters(message.source.agent));
+		ProtocolEvents.messageSent(agent.getName(), message.source.agent.getName(), response, k);
+		return response;
 	}
 
 	protected AgentCache updateCache(HEMMAMessage message) 
@@ -458,7 +452,6 @@ public class HEMMAProtocol
 		return cache;
 	}
 	
-	static Random rand = new Random(0);
 	boolean started = false;
 
 	public void execute(int k)
@@ -466,6 +459,7 @@ public class HEMMAProtocol
 		if(state == HEMMAState.Off)
 			return;
 		
+		long start = PhaseTimers.start(timers, Phase.MessageProcessing);
 		this.k = k;
 		boolean FSRejected = false;
 		do
@@ -539,6 +533,7 @@ public class HEMMAProtocol
 				}
 			}
 		} while(!messageQueue.isEmpty());
+		PhaseTimers.stop(timers, Phase.MessageProcessing, start);
 	}
 
 	private void resumeSession(HEMMAProtocol source) 
@@ -553,7 +548,7 @@ public class HEMMAProtocol
 		if(state == Idle)
 		{
 			log("Initialising HEMMA protocol; broadcasting DN message.");
-			neighbours = new HashSet<HEMMAProtocol>();
+			neighbours = new LinkedHashSet<HEMMAProtocol>();
 			HEMMAMessage message = new HEMMAMessage(this, HEMMAMessageType.DiscoverNeighbours);
 			broadcast(message);
 		}
@@ -584,9 +579,15 @@ public class HEMMAProtocol
 		for (IAgent agent : connections) 
 		{
 			if(!agent.equals(exclude))
-				agent.getHemmaProtocol().message(message);
+				send(agent.getHemmaProtocol(), message);
 		}
 	}
+	
+	protected HEMMAMessage send(HEMMAProtocol destination, HEMMAMessage message)
+	{
+		ProtocolEvents.messageSent(agent.getName(), destination.agent.getName(), message, k);
+		return destination.message(message);
+	}
 
 	/**
 	 * Physically connects this agent to another agent.
@@ -597,9 +598,14 @@ public class HEMMAProtocol
 		connections.add(neighbour);
 	}
 
+	/**
+	 * @return The cached neighbours, or the neighbours themselves if the
+	 * context isn't using the cache on this thread. Decided once per call,
+	 * so a sweep over the result sees one or the other throughout.
+	 */
 	public Iterable<IAgent> neighbourSet()
 	{
-		if(useCache)
+		if(context.isUsingCache())
 			return neighbourCache.values();
 		else
 			return connections;
@@ -615,9 +621,102 @@ public class HEMMAProtocol
 
 	protected void updateValues(HEMMAProtocol n) 
 	{
-		HEMMAMessage response = n.message(new HEMMAMessage(this, HEMMAProtocol.HEMMAMessageType.VariableUpdate, parameters(n.agent)));
+		HEMMAMessage request = new HEMMAMessage(this, HEMMAProtocol.HEMMAMessageType.VariableUpdate, parameters(n.agent));
+		
+		// Neighbours on other threads respond asynchronously:
+		VariableUpdateChannel channel = remoteChannels == null ? null : remoteChannels.get(n);
+		if(channel != null)
+		{
+			ProtocolEvents.messageSent(agent.getName(), n.agent.getName(), request, k);
+			channel.send(request, n);
+			return;
+		}
+		
+		HEMMAMessage response = send(n, request);
+		received(response);
 		updateCache(response);
 	}
+	
+	/**
+	 * Counts and records a message received, once whichever path it arrives by.
+	 */
+	private void received(HEMMAMessage message)
+	{
+		messageCounts.incrementAndGet(message.type.ordinal());
+		ProtocolEvents.messageReceived(agent.getName(), message.source.agent.getName(), message, k);
+	}
+	
+	/**
+	 * @return The number of messages of the given type received by this agent.
+	 */
+	public long getMessageCount(HEMMAMessageType type)
+	{
+		return messageCounts.get(type.ordinal());
+	}
+	
+	/**
+	 * @return The number of messages of all types received by this agent.
+	 */
+	public long getMessageCount()
+	{
+		long count = 0;
+		for (HEMMAMessageType type : HEMMAMessageType.values())
+			count += getMessageCount(type);
+		return count;
+	}
+	
+	/**
+	 * @return The agent's phase timers, or null if they are disabled.
+	 */
+	public PhaseTimers getTimers()
+	{
+		return timers;
+	}
+	
+	public EvaluationContext getContext()
+	{
+		return context;
+	}
+	
+	/**
+	 * @param context Shared by all agents in the network.
+	 * @see EvaluationContext#of(java.util.Collection)
+	 */
+	public void setContext(EvaluationContext context)
+	{
+		this.context = context;
+	}
+	
+	/**
+	 * Routes variable updates to the given neighbour through a channel 
+	 * instead of calling it directly.
+	 * @param neighbour
+	 * @param channel The channel, or null to revert to direct calls.
+	 */
+	public void setRemoteChannel(HEMMAProtocol neighbour, VariableUpdateChannel channel)
+	{
+		if(remoteChannels == null)
+			remoteChannels = new HashMap<>();
+		if(channel == null)
+			remoteChannels.remove(neighbour);
+		else
+			remoteChannels.put(neighbour, channel);
+	}
+	
+	/**
+	 * Delivers a variable update sent through a {@link VariableUpdateChannel}.
+	 * @param message A VU request or response.
+	 * @return The response to a VU request, to be returned to its source; null for a response.
+	 */
+	public HEMMAMessage deliver(HEMMAMessage message)
+	{
+		received(message);
+		if(message.type == HEMMAMessageType.VariableUpdate)
+			return variableUpdate(message);
+		
+		updateCache(message);
+		return null;
+	}
 
 	protected double[] parameters(IAgent wrt)
 	{
@@ -647,11 +746,7 @@ public class HEMMAProtocol
 	
 	void log(String message)
 	{
-		log.print(k);
-		log.print(",");
-		log.print(agent.getName());
-		log.print(",");
-		log.println(message);
+		log.println(k+","+agent.getName()+","+message); // single call so that lines from different threads do not interleave
 	}
 	
 	@Override
@@ -0,0 +1,115 @@
+package ellipsis.hemma;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * The tuned optimisation parameters shared by all agents of a network.
+ * Immutable.
+ */
+public class HemmaParameters
+{
+	/**
+	 * As tuned for the 8 bus test network.
+	 */
+	public static final HemmaParameters DEFAULT = new HemmaParameters(0.08, 1.02, 0.18, 0.11, 0.991);
+
+	private final double alpha;
+	private final double alphaMultiplier;
+	private final double lambdaMultiplier;
+	private final double epsilon;
+	private final double epsilonMultiplier;
+
+	public HemmaParameters(double alpha, double alphaMultiplier, double lambdaMultiplier, double epsilon, double epsilonMultiplier)
+	{
+		this.alpha = alpha;
+		this.alphaMultiplier = alphaMultiplier;
+		this.lambdaMultiplier = lambdaMultiplier;
+		this.epsilon = epsilon;
+		this.epsilonMultiplier = epsilonMultiplier;
+	}
+
+	/**
+	 * @param values In the order of {@link #toArray()}.
+	 */
+	public static HemmaParameters of(double[] values)
+	{
+		return new HemmaParameters(values[0], values[1], values[2], values[3], values[4]);
+	}
+
+	/**
+	 * @return The parameters currently set on the agent.
+	 */
+	public static HemmaParameters of(Agent agent)
+	{
+		return new HemmaParameters(
+				agent.getAlpha(),
+				agent.getAlphaMultiplier(),
+				agent.getLambdaMultiplier(),
+				agent.getEpsilon(),
+				agent.getEpsilonMultiplier());
+	}
+
+	public void applyTo(Collection<? extends Agent> agents)
+	{
+		for (Agent agent : agents)
+		{
+			agent.setAlpha(alpha);
+			agent.setAlphaMultiplier(alphaMultiplier);
+			agent.setLambdaMultiplier(lambdaMultiplier);
+			agent.setEpsilon(epsilon);
+			agent.setEpsilonMultiplier(epsilonMultiplier);
+		}
+	}
+
+	/**
+	 * @return [initial alpha, alpha multiplier, lambda multiplier, initial epsilon, epsilon multiplier]
+	 */
+	public double[] toArray()
+	{
+		return new double[]{ alpha, alphaMultiplier, lambdaMultiplier, epsilon, epsilonMultiplier };
+	}
+
+	public double getAlpha()
+	{
+		return alpha;
+	}
+
+	public double getAlphaMultiplier()
+	{
+		return alphaMultiplier;
+	}
+
+	public double getLambdaMultiplier()
+	{
+		return lambdaMultiplier;
+	}
+
+	public double getEpsilon()
+	{
+		return epsilon;
+	}
+
+	public double getEpsilonMultiplier()
+	{
+		return epsilonMultiplier;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Arrays.hashCode(toArray());
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		return obj instanceof HemmaParameters && Arrays.equals(toArray(), ((HemmaParameters)obj).toArray());
+	}
+
+	@Override
+	public String toString()
+	{
+		return Arrays.toString(toArray());
+	}
+}
@@ -0,0 +1,150 @@
+package ellipsis.hemma;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of non-negative long values, e.g. durations in nanoseconds,
+ * with buckets whose width doubles with each power of two. Each power of
+ * two is split into 16 linear sub-buckets, so values are resolved to
+ * within 1/16 of their magnitude over the whole range of long at a fixed
+ * cost per record. Bucket counts are only allocated up to the largest
+ * value recorded.
+ *
+ * Not thread safe; record into one histogram per thread, or per agent, and
+ * {@link #add(LogLinearHistogram) add} them together to aggregate.
+ */
+public class LogLinearHistogram
+{
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private long[] counts = new long[2*SUB_BUCKETS];
+	private long count;
+	private long sum;
+	private long min = Long.MAX_VALUE;
+	private long max = 0;
+
+	/**
+	 * @param value Negative values are recorded as 0.
+	 */
+	public void record(long value)
+	{
+		value = Math.max(0, value);
+		int index = index(value);
+		if(index >= counts.length)
+			counts = Arrays.copyOf(counts, Math.max(index+1, 2*counts.length));
+		++counts[index];
+		++count;
+		sum += value;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+
+	/**
+	 * Adds all values recorded in other to this histogram.
+	 */
+	public void add(LogLinearHistogram other)
+	{
+		if(other.counts.length > counts.length)
+			counts = Arrays.copyOf(counts, other.counts.length);
+		for (int i = 0; i < other.counts.length; i++)
+			counts[i] += other.counts[i];
+		count += other.count;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	public void reset()
+	{
+		Arrays.fill(counts, 0);
+		count = 0;
+		sum = 0;
+		min = Long.MAX_VALUE;
+		max = 0;
+	}
+
+	public long getCount()
+	{
+		return count;
+	}
+
+	public long getSum()
+	{
+		return sum;
+	}
+
+	/**
+	 * @return The smallest value recorded, or 0 if there are none.
+	 */
+	public long getMin()
+	{
+		return count == 0 ? 0 : min;
+	}
+
+	public long getMax()
+	{
+		return max;
+	}
+
+	public double getMean()
+	{
+		return count == 0 ? 0 : sum/(double)count;
+	}
+
+	/**
+	 * @param percentile In [0, 100].
+	 * @return The largest value in the bucket holding the value at the
+	 * percentile, but no more than the largest value recorded.
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		if(count == 0)
+			return 0;
+		long rank = Math.max(1, (long)Math.ceil(percentile/100*count));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++)
+		{
+			seen += counts[i];
+			if(seen >= rank)
+				return Math.min(max, highestValue(i));
+		}
+		return max;
+	}
+
+	/**
+	 * Values below {@link #SUB_BUCKETS} have a bucket each; above that each
+	 * power of two has SUB_BUCKETS buckets indexed by the bits following the
+	 * most significant.
+	 */
+	static int index(long value)
+	{
+		if(value < SUB_BUCKETS)
+			return (int)value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		int top = (int)(value >>> shift); // in [SUB_BUCKETS, 2*SUB_BUCKETS)
+		return (shift + 1)*SUB_BUCKETS + top - SUB_BUCKETS;
+	}
+
+	static long lowestValue(int index)
+	{
+		if(index < SUB_BUCKETS)
+			return index;
+		int shift = index/SUB_BUCKETS - 1;
+		long top = index%SUB_BUCKETS + SUB_BUCKETS;
+		return top << shift;
+	}
+
+	static long highestValue(int index)
+	{
+		boolean last = index == (64 - SUB_BUCKET_BITS)*SUB_BUCKETS - 1; // holds Long.MAX_VALUE
+		return last ? Long.MAX_VALUE : lowestValue(index+1) - 1;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("count=%d mean=%.1f p50=%d p90=%d p99=%d max=%d",
+				count, getMean(), getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99), max);
+	}
+}
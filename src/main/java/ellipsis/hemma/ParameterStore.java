@@ -0,0 +1,188 @@
+package ellipsis.hemma;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Best known tuned parameters of networks, keyed by
+ * {@link TopologyFingerprint}, so that a new network can start from the
+ * parameters tuned for the most similar known one rather than waiting for
+ * a tuning campaign.
+ *
+ * If a file is given, entries already in it are loaded when the store is
+ * created and each new entry is appended to it. Each line of the file is
+ * <pre>
+ * fingerprint features separated by commas \t parameters separated by commas \t convergence
+ * </pre>
+ * A last line cut short by an interrupted write is removed when the file
+ * is loaded, and other lines that can't be parsed are ignored. Thread safe.
+ */
+public class ParameterStore
+{
+	/**
+	 * Backs the {@link #shared() shared} store.
+	 */
+	public static final File DEFAULT_FILE = new File("/opt/hemma/parameters.store");
+
+	private static class Entry
+	{
+		final TopologyFingerprint fingerprint;
+		final HemmaParameters parameters;
+		final double convergence;
+
+		Entry(TopologyFingerprint fingerprint, HemmaParameters parameters, double convergence)
+		{
+			this.fingerprint = fingerprint;
+			this.parameters = parameters;
+			this.convergence = convergence;
+		}
+	}
+
+	private static class SharedHolder
+	{
+		static final ParameterStore SHARED = new ParameterStore(DEFAULT_FILE);
+	}
+
+	private final List<Entry> entries = new ArrayList<>();
+	private final AppendOnlyFile file;
+
+	/**
+	 * An in-memory store.
+	 */
+	public ParameterStore()
+	{
+		this(null);
+	}
+
+	/**
+	 * @param file Append-only store; null for an in-memory store.
+	 */
+	public ParameterStore(File file)
+	{
+		this.file = file == null ? null : new AppendOnlyFile(file);
+		if(file != null)
+			load();
+	}
+
+	/**
+	 * @return The store backed by {@link #DEFAULT_FILE}, loaded on first use.
+	 */
+	public static ParameterStore shared()
+	{
+		return SharedHolder.SHARED;
+	}
+
+	/**
+	 * Records parameters tuned for a network, replacing those recorded for
+	 * the same fingerprint unless they converged better.
+	 * @param convergence The convergence measure achieved; lower is better.
+	 * @return true if the parameters were recorded.
+	 */
+	public synchronized boolean put(TopologyFingerprint fingerprint, HemmaParameters parameters, double convergence)
+	{
+		for (int i = 0; i < entries.size(); i++)
+		{
+			Entry entry = entries.get(i);
+			if(entry.fingerprint.equals(fingerprint))
+			{
+				if(entry.convergence <= convergence)
+					return false;
+				entries.remove(i);
+				break;
+			}
+		}
+		entries.add(new Entry(fingerprint, parameters, convergence));
+		if(file != null)
+			append(fingerprint, parameters, convergence);
+		return true;
+	}
+
+	/**
+	 * @return The parameters of the nearest known network, or
+	 * {@link HemmaParameters#DEFAULT} if the store is empty.
+	 */
+	public synchronized HemmaParameters nearest(TopologyFingerprint fingerprint)
+	{
+		Entry nearest = null;
+		double nearestDistance = Double.POSITIVE_INFINITY;
+		for (Entry entry : entries)
+		{
+			double distance = entry.fingerprint.distance(fingerprint);
+			if(distance < nearestDistance)
+			{
+				nearest = entry;
+				nearestDistance = distance;
+			}
+		}
+		return nearest == null ? HemmaParameters.DEFAULT : nearest.parameters;
+	}
+
+	/**
+	 * Sets the parameters of the nearest known network on all agents.
+	 * @return The parameters set.
+	 */
+	public HemmaParameters apply(Collection<? extends Agent> agents)
+	{
+		HemmaParameters parameters = nearest(TopologyFingerprint.of(agents));
+		parameters.applyTo(agents);
+		return parameters;
+	}
+
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+
+	private void load()
+	{
+		file.load(line ->
+		{
+			String[] fields = line.split("\t", -1);
+			if(fields.length != 3)
+				return;
+			try
+			{
+				TopologyFingerprint fingerprint = new TopologyFingerprint(parse(fields[0]));
+				HemmaParameters parameters = HemmaParameters.of(parse(fields[1]));
+				double convergence = Double.parseDouble(fields[2]);
+				entries.removeIf(entry -> entry.fingerprint.equals(fingerprint));
+				entries.add(new Entry(fingerprint, parameters, convergence));
+			}
+			catch (RuntimeException e)
+			{
+				// Corrupt line.
+			}
+		});
+	}
+
+	private static double[] parse(String field)
+	{
+		String[] entries = field.split(",");
+		double[] values = new double[entries.length];
+		for (int i = 0; i < entries.length; i++)
+			values[i] = Double.parseDouble(entries[i]);
+		return values;
+	}
+
+	private void append(TopologyFingerprint fingerprint, HemmaParameters parameters, double convergence)
+	{
+		StringBuilder line = new StringBuilder();
+		join(line, fingerprint.getFeatures()).append('\t');
+		join(line, parameters.toArray()).append('\t');
+		line.append(convergence);
+		file.append(line.toString());
+	}
+
+	private static StringBuilder join(StringBuilder line, double[] values)
+	{
+		for (int i = 0; i < values.length; i++)
+		{
+			if(i > 0)
+				line.append(',');
+			line.append(values[i]);
+		}
+		return line;
+	}
+}
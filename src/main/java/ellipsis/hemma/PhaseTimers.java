@@ -0,0 +1,157 @@
+package ellipsis.hemma;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Time spent by one agent in each phase of an iteration. Every call is
+ * counted and every {@link #SAMPLE_INTERVAL}'th call of each phase is timed
+ * with {@link System#nanoTime()} into a {@link LogLinearHistogram}.
+ *
+ * Enabled with -Dhemma.phaseTimers=true. Call sites use the static
+ * methods, which test the constant {@link #ENABLED} first, so when
+ * disabled the JIT removes the instrumentation entirely:
+ * <pre>
+ * long start = PhaseTimers.start(timers, Phase.Gradient);
+ * ...
+ * PhaseTimers.stop(timers, Phase.Gradient, start);
+ * </pre>
+ * Not thread safe; each agent is executed by one thread at a time.
+ */
+public class PhaseTimers
+{
+	public static final boolean ENABLED = Boolean.getBoolean("hemma.phaseTimers");
+	public static final int SAMPLE_INTERVAL = Math.max(1, Integer.getInteger("hemma.phaseTimers.sampleInterval", 1));
+
+	private static final int TOP_AGENTS = 10;
+
+	public static enum Phase
+	{
+		Gradient,
+		Backtrack,
+		Project,
+		UpdateNeighbourG,
+		UpdateValues,
+		UpdateConvergence,
+		MessageProcessing
+	}
+
+	private final LogLinearHistogram[] histograms = new LogLinearHistogram[Phase.values().length];
+	private final long[] counts = new long[Phase.values().length];
+	private final int[] untilSample = new int[Phase.values().length]; // calls of each phase until the next is timed
+
+	public PhaseTimers()
+	{
+		for (int i = 0; i < histograms.length; i++)
+			histograms[i] = new LogLinearHistogram();
+	}
+
+	/**
+	 * @return The start time if this call is to be timed, otherwise -1.
+	 */
+	public static long start(PhaseTimers timers, Phase phase)
+	{
+		if(!ENABLED)
+			return -1;
+		if(--timers.untilSample[phase.ordinal()] > 0)
+			return -1;
+		timers.untilSample[phase.ordinal()] = SAMPLE_INTERVAL;
+		return System.nanoTime();
+	}
+
+	/**
+	 * @param start As returned by {@link #start(PhaseTimers, Phase)}.
+	 */
+	public static void stop(PhaseTimers timers, Phase phase, long start)
+	{
+		if(!ENABLED)
+			return;
+		++timers.counts[phase.ordinal()];
+		if(start >= 0)
+			timers.histograms[phase.ordinal()].record(System.nanoTime() - start);
+	}
+
+	/**
+	 * @return Sampled durations in nanoseconds.
+	 */
+	public LogLinearHistogram getHistogram(Phase phase)
+	{
+		return histograms[phase.ordinal()];
+	}
+
+	public long getCount(Phase phase)
+	{
+		return counts[phase.ordinal()];
+	}
+
+	/**
+	 * @return The estimated total nanoseconds spent in the phase.
+	 */
+	public double getTotal(Phase phase)
+	{
+		return counts[phase.ordinal()]*histograms[phase.ordinal()].getMean();
+	}
+
+	/**
+	 * @return A table of each phase over all the agents, followed by the
+	 * agents spending the most time in each phase; empty if timers are
+	 * disabled.
+	 */
+	public static String report(Collection<? extends Agent> agents)
+	{
+		if(!ENABLED)
+			return "";
+
+		StringBuilder report = new StringBuilder();
+		report.append(String.format(Locale.ROOT, "Phase timers (1 in %d calls timed, times in microseconds):%n", SAMPLE_INTERVAL));
+		report.append(String.format(Locale.ROOT, "%-18s %12s %10s %10s %10s %10s %10s %12s %6s%n",
+				"phase", "calls", "mean", "p50", "p90", "p99", "max", "total ms", "share"));
+
+		Phase[] phases = Phase.values();
+		LogLinearHistogram[] aggregate = new LogLinearHistogram[phases.length];
+		long[] counts = new long[phases.length];
+		double[] totals = new double[phases.length];
+		double total = 0;
+		for (Phase phase : phases)
+		{
+			int p = phase.ordinal();
+			aggregate[p] = new LogLinearHistogram();
+			for (Agent agent : agents)
+			{
+				PhaseTimers timers = agent.getHemmaProtocol().getTimers();
+				aggregate[p].add(timers.histograms[p]);
+				counts[p] += timers.counts[p];
+				totals[p] += timers.getTotal(phase);
+			}
+			total += totals[p];
+		}
+		for (Phase phase : phases)
+		{
+			int p = phase.ordinal();
+			LogLinearHistogram h = aggregate[p];
+			report.append(String.format(Locale.ROOT, "%-18s %12d %10.2f %10.2f %10.2f %10.2f %10.2f %12.1f %5.1f%%%n",
+					phase, counts[p], h.getMean()*1e-3,
+					h.getValueAtPercentile(50)*1e-3, h.getValueAtPercentile(90)*1e-3,
+					h.getValueAtPercentile(99)*1e-3, h.getMax()*1e-3,
+					totals[p]*1e-6, total > 0 ? 100*totals[p]/total : 0));
+		}
+
+		for (Phase phase : phases)
+		{
+			List<Agent> slowest = new ArrayList<>(agents);
+			slowest.sort((a, b) -> Double.compare(
+					b.getHemmaProtocol().getTimers().getTotal(phase),
+					a.getHemmaProtocol().getTimers().getTotal(phase)));
+			report.append(String.format(Locale.ROOT, "Slowest agents in %s:%n", phase));
+			for (Agent agent : slowest.subList(0, Math.min(TOP_AGENTS, slowest.size())))
+			{
+				PhaseTimers timers = agent.getHemmaProtocol().getTimers();
+				report.append(String.format(Locale.ROOT, "  %-16s %10.1f ms  %s%n",
+						agent.getName(), timers.getTotal(phase)*1e-6, timers.getHistogram(phase)));
+			}
+		}
+		return report.toString();
+	}
+}
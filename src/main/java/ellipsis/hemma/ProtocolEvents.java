@@ -0,0 +1,208 @@
+package ellipsis.hemma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import ellipsis.hemma.HEMMAProtocol.HEMMAMessage;
+import ellipsis.hemma.HEMMAProtocol.HEMMAState;
+
+/**
+ * Java Flight Recorder events of the {@link HEMMAProtocol}: state
+ * transitions, sessions from start to finish, FinishSession rejections and
+ * messages sent and received. Record them with e.g.
+ * <pre>
+ * java -XX:StartFlightRecording=filename=hemma.jfr ...
+ * </pre>
+ * and view them with JDK Mission Control or <code>jfr print --categories HEMMA</code>.
+ *
+ * Each method checks whether its event type is being recorded before
+ * creating anything, so costs no more than a flag test when recording is
+ * off.
+ */
+public class ProtocolEvents
+{
+	@Name("ellipsis.hemma.StateTransition")
+	@Label("State Transition")
+	@Category({"HEMMA", "Protocol"})
+	@Description("An agent's protocol changed state")
+	static class StateTransitionEvent extends Event
+	{
+		@Label("Agent")
+		String agent;
+
+		@Label("From")
+		String from;
+
+		@Label("To")
+		String to;
+
+		@Label("Iteration")
+		int iteration;
+	}
+
+	@Name("ellipsis.hemma.Session")
+	@Label("Session")
+	@Category({"HEMMA", "Protocol"})
+	@Description("An agent's optimisation session, from StartSession until it is idle again")
+	static class SessionEvent extends Event
+	{
+		@Label("Agent")
+		String agent;
+
+		@Label("Start Iteration")
+		int startIteration;
+
+		@Label("Execution Iteration")
+		@Description("When all neighbours had accepted the session; -1 if they never did")
+		int executionIteration = -1;
+
+		@Label("End Iteration")
+		int endIteration;
+
+		@Label("Outcome")
+		@Description("Finished or Cancelled")
+		String outcome;
+	}
+
+	@Name("ellipsis.hemma.FinishSessionRejected")
+	@Label("FinishSession Rejected")
+	@Category({"HEMMA", "Protocol"})
+	@Description("An agent rejected a neighbour's FinishSession request because its own completion criteria were not met")
+	static class FinishSessionRejectedEvent extends Event
+	{
+		@Label("Agent")
+		String agent;
+
+		@Label("Requester")
+		String requester;
+
+		@Label("Iteration")
+		int iteration;
+	}
+
+	@Name("ellipsis.hemma.MessageSent")
+	@Label("Message Sent")
+	@Category({"HEMMA", "Protocol", "Messages"})
+	static class MessageSentEvent extends Event
+	{
+		@Label("Agent")
+		String agent;
+
+		@Label("Destination")
+		String destination;
+
+		@Label("Type")
+		String type;
+
+		@Label("Iteration")
+		int iteration;
+	}
+
+	@Name("ellipsis.hemma.MessageReceived")
+	@Label("Message Received")
+	@Category({"HEMMA", "Protocol", "Messages"})
+	static class MessageReceivedEvent extends Event
+	{
+		@Label("Agent")
+		String agent;
+
+		@Label("Source")
+		String source;
+
+		@Label("Type")
+		String type;
+
+		@Label("Iteration")
+		int iteration;
+	}
+
+	private static final EventType STATE_TRANSITION = EventType.getEventType(StateTransitionEvent.class);
+	private static final EventType SESSION = EventType.getEventType(SessionEvent.class);
+	private static final EventType FINISH_SESSION_REJECTED = EventType.getEventType(FinishSessionRejectedEvent.class);
+	private static final EventType MESSAGE_SENT = EventType.getEventType(MessageSentEvent.class);
+	private static final EventType MESSAGE_RECEIVED = EventType.getEventType(MessageReceivedEvent.class);
+
+	static void stateTransition(String agent, HEMMAState from, HEMMAState to, int iteration)
+	{
+		if(!STATE_TRANSITION.isEnabled())
+			return;
+		StateTransitionEvent event = new StateTransitionEvent();
+		event.agent = agent;
+		event.from = String.valueOf(from);
+		event.to = String.valueOf(to);
+		event.iteration = iteration;
+		event.commit();
+	}
+
+	/**
+	 * @return The session, timed from now, or null if sessions are not being recorded.
+	 */
+	static SessionEvent sessionStarted(String agent, int iteration)
+	{
+		if(!SESSION.isEnabled())
+			return null;
+		SessionEvent session = new SessionEvent();
+		session.begin();
+		session.agent = agent;
+		session.startIteration = iteration;
+		return session;
+	}
+
+	static void sessionExecuting(SessionEvent session, int iteration)
+	{
+		if(session != null && session.executionIteration < 0)
+			session.executionIteration = iteration;
+	}
+
+	static void sessionEnded(SessionEvent session, boolean finished, int iteration)
+	{
+		if(session == null)
+			return;
+		session.end();
+		if(session.shouldCommit())
+		{
+			session.endIteration = iteration;
+			session.outcome = finished ? "Finished" : "Cancelled";
+			session.commit();
+		}
+	}
+
+	static void finishSessionRejected(String agent, String requester, int iteration)
+	{
+		if(!FINISH_SESSION_REJECTED.isEnabled())
+			return;
+		FinishSessionRejectedEvent event = new FinishSessionRejectedEvent();
+		event.agent = agent;
+		event.requester = requester;
+		event.iteration = iteration;
+		event.commit();
+	}
+
+	static void messageSent(String agent, String destination, HEMMAMessage message, int iteration)
+	{
+		if(!MESSAGE_SENT.isEnabled())
+			return;
+		MessageSentEvent event = new MessageSentEvent();
+		event.agent = agent;
+		event.destination = destination;
+		event.type = message.getType().name();
+		event.iteration = iteration;
+		event.commit();
+	}
+
+	static void messageReceived(String agent, String source, HEMMAMessage message, int iteration)
+	{
+		if(!MESSAGE_RECEIVED.isEnabled())
+			return;
+		MessageReceivedEvent event = new MessageReceivedEvent();
+		event.agent = agent;
+		event.source = source;
+		event.type = message.getType().name();
+		event.iteration = iteration;
+		event.commit();
+	}
+}
@@ -0,0 +1,118 @@
+package ellipsis.hemma;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import ellipsis.hemma.IAgent.AgentType;
+
+/**
+ * Summary of the shape of a network used to find the tuned parameters of
+ * the most similar known network. The features are
+ * <pre>
+ * ln(number of agents)
+ * mean, maximum and standard deviation of the degree
+ * fraction of agents with one neighbour
+ * mean and standard deviation of log10(line conductance)
+ * fraction of agents of each {@link AgentType}
+ * </pre>
+ * Immutable.
+ */
+public class TopologyFingerprint
+{
+	public static final int FEATURE_COUNT = 7 + AgentType.values().length;
+
+	// Difference in each feature counted as a distance of 1:
+	private static final double[] SCALE = {1.0, 1.0, 5.0, 1.0, 0.25, 1.0, 0.5, 0.25, 0.25, 0.25};
+
+	private final double[] features;
+
+	/**
+	 * @param features As returned by {@link #getFeatures()}.
+	 */
+	public TopologyFingerprint(double[] features)
+	{
+		if(features.length != FEATURE_COUNT)
+			throw new IllegalArgumentException("Expected "+FEATURE_COUNT+" features but found "+features.length);
+		this.features = features.clone();
+	}
+
+	public static TopologyFingerprint of(Collection<? extends Agent> agents)
+	{
+		double[] f = new double[FEATURE_COUNT];
+		int n = agents.size();
+		if(n == 0)
+			return new TopologyFingerprint(f);
+
+		double degreeSum = 0, degreeSquares = 0, maxDegree = 0, leaves = 0;
+		double logYSum = 0, logYSquares = 0;
+		int lines = 0; // each counted from both ends
+		for (Agent agent : agents)
+		{
+			int degree = agent.neighbourCount();
+			degreeSum += degree;
+			degreeSquares += degree*degree;
+			maxDegree = Math.max(maxDegree, degree);
+			if(degree == 1)
+				++leaves;
+			for (IAgent neighbour : agent.neighbours())
+			{
+				double logY = Math.log10(agent.conductance(neighbour));
+				logYSum += logY;
+				logYSquares += logY*logY;
+				++lines;
+			}
+			++f[7 + agent.getType().ordinal()];
+		}
+
+		double meanDegree = degreeSum/n;
+		double meanLogY = lines > 0 ? logYSum/lines : 0;
+		f[0] = Math.log(n);
+		f[1] = meanDegree;
+		f[2] = maxDegree;
+		f[3] = Math.sqrt(Math.max(0, degreeSquares/n - meanDegree*meanDegree));
+		f[4] = leaves/n;
+		f[5] = meanLogY;
+		f[6] = lines > 0 ? Math.sqrt(Math.max(0, logYSquares/lines - meanLogY*meanLogY)) : 0;
+		for (int i = 7; i < FEATURE_COUNT; i++)
+			f[i] /= n;
+		return new TopologyFingerprint(f);
+	}
+
+	/**
+	 * @return Euclidean distance between the features, each divided by a
+	 * typical scale so that all contribute similarly.
+	 */
+	public double distance(TopologyFingerprint other)
+	{
+		double sum = 0;
+		for (int i = 0; i < FEATURE_COUNT; i++)
+		{
+			double d = (features[i] - other.features[i])/SCALE[i];
+			sum += d*d;
+		}
+		return Math.sqrt(sum);
+	}
+
+	public double[] getFeatures()
+	{
+		return features.clone();
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Arrays.hashCode(features);
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		return obj instanceof TopologyFingerprint && Arrays.equals(features, ((TopologyFingerprint)obj).features);
+	}
+
+	@Override
+	public String toString()
+	{
+		return Arrays.toString(features);
+	}
+}
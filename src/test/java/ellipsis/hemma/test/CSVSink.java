@@ -0,0 +1,62 @@
+package ellipsis.hemma.test;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Writes data points in the same CSV format as {@link Solution#printCSV(int, int)}.
+ */
+public class CSVSink implements DataPointSink
+{
+	private PrintStream out;
+	private double[] row;
+
+	public CSVSink(PrintStream out)
+	{
+		this.out = out;
+	}
+
+	@Override
+	public void open(List<String> agentNames)
+	{
+		row = new double[DataPoint.columnCount(agentNames.size())];
+		printHeader(out, DataPoint.columnNames(agentNames.size()));
+	}
+
+	@Override
+	public void write(int k, DataPoint point)
+	{
+		write(k, point.values(row));
+	}
+
+	/**
+	 * @param row Values in the order of {@link DataPoint#values(double[])}.
+	 */
+	public void write(int k, double[] row)
+	{
+		out.print(k);
+		for (int i = 0; i < row.length; i++)
+		{
+			out.print(',');
+			out.print(row[i]);
+		}
+		out.println();
+	}
+
+	@Override
+	public void close()
+	{
+		out.flush();
+	}
+
+	public static void printHeader(PrintStream out, List<String> columns)
+	{
+		out.print("k");
+		for (String column : columns)
+		{
+			out.print(',');
+			out.print(column);
+		}
+		out.println();
+	}
+}
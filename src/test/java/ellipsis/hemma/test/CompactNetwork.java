@@ -0,0 +1,179 @@
+package ellipsis.hemma.test;
+
+import java.util.Set;
+
+import ellipsis.hemma.Agent;
+import ellipsis.hemma.IAgent.AgentType;
+
+/**
+ * Array based description of a network: one entry per bus and lines stored in
+ * compressed sparse row form (each line appears once at each of its ends).
+ * Agents are only created when {@link #agentSet()} is called.
+ */
+public class CompactNetwork
+{
+	private final AgentType[] types;
+	private final double[] parameters; // VC: max power, CP: constant power, CC: constant current
+	private final int grounded;
+
+	// Lines:
+	private final int[] offsets;   // neighbours of bus i are neighbours[offsets[i]..offsets[i+1])
+	private final int[] neighbours;
+	private final double[] lengths; // metres
+
+	CompactNetwork(AgentType[] types, double[] parameters, int grounded, int[] offsets, int[] neighbours, double[] lengths)
+	{
+		this.types = types;
+		this.parameters = parameters;
+		this.grounded = grounded;
+		this.offsets = offsets;
+		this.neighbours = neighbours;
+		this.lengths = lengths;
+	}
+
+	/**
+	 * Builds the compressed form from an edge list.
+	 * @param from First end of each line.
+	 * @param to Second end of each line.
+	 * @param length Length of each line in metres.
+	 * @param lineCount The number of valid entries in the edge arrays.
+	 */
+	static CompactNetwork fromLines(AgentType[] types, double[] parameters, int grounded, int[] from, int[] to, double[] length, int lineCount)
+	{
+		int busCount = types.length;
+
+		// Count degrees:
+		int[] offsets = new int[busCount+1];
+		for (int e = 0; e < lineCount; e++)
+		{
+			++offsets[from[e]+1];
+			++offsets[to[e]+1];
+		}
+		for (int i = 0; i < busCount; i++)
+		{
+			offsets[i+1] += offsets[i];
+		}
+
+		// Fill adjacency:
+		int[] next = new int[busCount];
+		System.arraycopy(offsets, 0, next, 0, busCount);
+		int[] neighbours = new int[2*lineCount];
+		double[] lengths = new double[2*lineCount];
+		for (int e = 0; e < lineCount; e++)
+		{
+			int a = from[e];
+			int b = to[e];
+			neighbours[next[a]] = b;
+			lengths[next[a]++] = length[e];
+			neighbours[next[b]] = a;
+			lengths[next[b]++] = length[e];
+		}
+
+		return new CompactNetwork(types, parameters, grounded, offsets, neighbours, lengths);
+	}
+
+
+	//// Structure ////
+
+	public int busCount()
+	{
+		return types.length;
+	}
+
+	public int lineCount()
+	{
+		return neighbours.length/2;
+	}
+
+	public AgentType type(int bus)
+	{
+		return types[bus];
+	}
+
+	public double parameter(int bus)
+	{
+		return parameters[bus];
+	}
+
+	public int degree(int bus)
+	{
+		return offsets[bus+1] - offsets[bus];
+	}
+
+	public int getGrounded()
+	{
+		return grounded;
+	}
+
+	/**
+	 * @return CSR offsets; the neighbours of bus i are at indices [offsets[i], offsets[i+1]) of {@link #neighbours()}.
+	 */
+	public int[] offsets()
+	{
+		return offsets;
+	}
+
+	public int[] neighbours()
+	{
+		return neighbours;
+	}
+
+	public double[] lengths()
+	{
+		return lengths;
+	}
+
+	public String name(int bus)
+	{
+		return types[bus].name()+bus;
+	}
+
+
+	//// Agents ////
+
+	/**
+	 * Creates the agents and links for this network.
+	 */
+	public Set<Agent> agentSet()
+	{
+		return builder().agentSet();
+	}
+
+	/**
+	 * @return A builder populated with this network's agents and links.
+	 */
+	public NetworkBuilder builder()
+	{
+		NetworkBuilder builder = new NetworkBuilder();
+
+		for (int i = 0; i < types.length; i++)
+		{
+			switch (types[i])
+			{
+			case VC:
+				builder.makeVCAgent(name(i), parameters[i]);
+				break;
+			case CP:
+				builder.makeCPAgent(name(i), parameters[i]);
+				break;
+			case CC:
+				builder.makeCCAgent(name(i), parameters[i]);
+				break;
+			}
+
+			if(i == grounded)
+				builder.setGrounded(true);
+		}
+
+		for (int i = 0; i < types.length; i++)
+		{
+			for (int j = offsets[i]; j < offsets[i+1]; j++)
+			{
+				if(neighbours[j] > i) // each line once
+					builder.link(name(i), name(neighbours[j]), lengths[j]);
+			}
+		}
+
+		return builder;
+	}
+}
@@ -0,0 +1,101 @@
+package ellipsis.hemma.test;
+
+import java.util.Set;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealVector;
+
+import ellipsis.hemma.Agent;
+
+/**
+ * A {@link Solution} that keeps every data point at full resolution in a
+ * {@link CompressedTrajectory} instead of lists of vectors. The public lists
+ * of {@link Solution} are left empty; use {@link #getTrajectory()} or
+ * {@link #dataPoint(int)} to read values back.
+ */
+public class CompressedSolution extends Solution
+{
+	private CompressedTrajectory trajectory;
+	private double[] row;
+	private int agentCount;
+
+	@Override
+	public void storeDataPoint(Set<Agent> agents)
+	{
+		if(trajectory == null)
+		{
+			agentCount = agents.size();
+			row = new double[DataPoint.columnCount(agentCount)];
+			trajectory = new CompressedTrajectory(row.length);
+		}
+		trajectory.append(dataPoint(agents).values(row));
+	}
+
+	@Override
+	public void finish(Set<Agent> agents)
+	{
+		if(trajectory != null)
+			trajectory.trimToSize();
+	}
+
+	/**
+	 * Rows are in the order of {@link DataPoint#values(double[])}.
+	 */
+	public CompressedTrajectory getTrajectory()
+	{
+		return trajectory;
+	}
+
+	/**
+	 * @return The k'th data point's values in the order of {@link DataPoint#values(double[])}.
+	 */
+	public double[] dataPoint(int k)
+	{
+		return trajectory.row(k, new double[row.length]);
+	}
+
+	@Override
+	public int size()
+	{
+		return trajectory == null ? 0 : trajectory.size();
+	}
+
+	@Override
+	public void printCSV(int lineCount, int gDimension)
+	{
+		int logFrequency = Math.max(1, size()/lineCount);
+		CSVSink.printHeader(out, DataPoint.columnNames(agentCount));
+		CSVSink csv = new CSVSink(out);
+
+		CompressedTrajectory.RowCursor rows = trajectory.rows(0);
+		double[] values = new double[row.length];
+		for (int k = 0; rows.hasNext(); k++)
+		{
+			rows.next(values);
+			if(k%logFrequency == 0)
+				csv.write(k, values);
+		}
+		csv.close();
+	}
+
+	@Override
+	public double convergence(double baseVoltage, double basePower)
+	{
+		int K = size();
+		double[] _80 = dataPoint((int)(K*0.8));
+		double[] last = dataPoint(K-1);
+
+		int x = DataPoint.columnOffset("x", agentCount);
+		int gradient = DataPoint.columnOffset("grad", agentCount);
+		RealVector _80State = new ArrayRealVector(_80, x, 3*agentCount);
+		RealVector finalState = new ArrayRealVector(last, x, 3*agentCount);
+		RealVector finalGradient = new ArrayRealVector(last, gradient, 3*agentCount);
+		return convergence(
+				_80State,
+				finalState,
+				finalGradient.getNorm(),
+				last[DataPoint.columnOffset("alpha", agentCount)],
+				last[DataPoint.columnOffset("||g(x)||", agentCount)],
+				baseVoltage, basePower);
+	}
+}
@@ -0,0 +1,304 @@
+package ellipsis.hemma.test;
+
+import java.util.Arrays;
+
+/**
+ * An append-only table of doubles, compressed column by column with the XOR
+ * encoding described in "Gorilla: A Fast, Scalable, In-Memory Time Series
+ * Database" (Pelkonen et al. 2015). Rows are implicitly numbered from 0 so no
+ * timestamps are stored.
+ *
+ * Each value is XORed with the previous value in its column. Identical values
+ * take one bit and values sharing their sign, exponent and leading mantissa
+ * bits take little more than the bits that changed. Every {@link #BLOCK_ROWS}
+ * rows each column restarts with an uncompressed value so that any row can be
+ * decoded by seeking to the start of its block.
+ */
+public class CompressedTrajectory
+{
+	public static final int BLOCK_ROWS = 256;
+
+	private final Column[] columns;
+	private int rowCount = 0;
+
+	public CompressedTrajectory(int columnCount)
+	{
+		columns = new Column[columnCount];
+		for (int c = 0; c < columnCount; c++)
+			columns[c] = new Column();
+	}
+
+	/**
+	 * @param row The values of the next row, one per column.
+	 */
+	public void append(double[] row)
+	{
+		boolean blockStart = rowCount%BLOCK_ROWS == 0;
+		for (int c = 0; c < columns.length; c++)
+			columns[c].append(row[c], blockStart);
+		++rowCount;
+	}
+
+	public int size()
+	{
+		return rowCount;
+	}
+
+	public int getColumnCount()
+	{
+		return columns.length;
+	}
+
+	/**
+	 * @return The value at the given row and column.
+	 */
+	public double get(int row, int column)
+	{
+		return cursor(column, row).next();
+	}
+
+	/**
+	 * Decodes a whole row.
+	 * @return dst
+	 */
+	public double[] row(int row, double[] dst)
+	{
+		for (int c = 0; c < columns.length; c++)
+			dst[c] = get(row, c);
+		return dst;
+	}
+
+	/**
+	 * Decodes rows [from, to) of a column into dst starting at offset.
+	 */
+	public void column(int column, int from, int to, double[] dst, int offset)
+	{
+		Cursor cursor = cursor(column, from);
+		for (int row = from; row < to; row++)
+			dst[offset++] = cursor.next();
+	}
+
+	/**
+	 * @return A cursor that decodes the given column sequentially starting at the given row.
+	 */
+	public Cursor cursor(int column, int row)
+	{
+		checkRow(row);
+		Cursor cursor = new Cursor(columns[column], row/BLOCK_ROWS*BLOCK_ROWS);
+		while(cursor.row < row)
+			cursor.next();
+		return cursor;
+	}
+
+	/**
+	 * @return A cursor that decodes every column sequentially starting at the given row.
+	 */
+	public RowCursor rows(int row)
+	{
+		return new RowCursor(row);
+	}
+
+	private void checkRow(int row)
+	{
+		if(row < 0 || row >= rowCount)
+			throw new IndexOutOfBoundsException("Row "+row+" of "+rowCount);
+	}
+
+	/**
+	 * @return The approximate heap used by the compressed values.
+	 */
+	public long compressedBytes()
+	{
+		long bytes = 0;
+		for (Column column : columns)
+			bytes += 8L*column.words.length + 8L*column.blockOffsets.length;
+		return bytes;
+	}
+
+	/**
+	 * Releases unused capacity, e.g. once a run is complete.
+	 */
+	public void trimToSize()
+	{
+		for (Column column : columns)
+			column.trimToSize();
+	}
+
+	public class Cursor
+	{
+		private final Column column;
+		private long position;
+		private int row;
+		private long previous;
+		private int leading, trailing;
+
+		private Cursor(Column column, int blockStartRow)
+		{
+			this.column = column;
+			this.row = blockStartRow;
+			this.position = column.blockOffsets[blockStartRow/BLOCK_ROWS];
+		}
+
+		public boolean hasNext()
+		{
+			return row < rowCount;
+		}
+
+		public double next()
+		{
+			checkRow(row);
+			if(row%BLOCK_ROWS == 0)
+			{
+				previous = read(64);
+			}
+			else if(read(1) != 0)
+			{
+				if(read(1) != 0)
+				{
+					leading = (int)read(6);
+					int length = (int)read(6) + 1;
+					trailing = 64 - leading - length;
+				}
+				previous ^= read(64 - leading - trailing) << trailing;
+			}
+			++row;
+			return Double.longBitsToDouble(previous);
+		}
+
+		private long read(int bits)
+		{
+			long value = column.read(position, bits);
+			position += bits;
+			return value;
+		}
+	}
+
+	public class RowCursor
+	{
+		private final Cursor[] cursors;
+
+		private RowCursor(int row)
+		{
+			cursors = new Cursor[columns.length];
+			for (int c = 0; c < columns.length; c++)
+				cursors[c] = cursor(c, row);
+		}
+
+		public boolean hasNext()
+		{
+			return cursors.length > 0 && cursors[0].hasNext();
+		}
+
+		/**
+		 * Decodes the next row into dst.
+		 * @return dst
+		 */
+		public double[] next(double[] dst)
+		{
+			for (int c = 0; c < cursors.length; c++)
+				dst[c] = cursors[c].next();
+			return dst;
+		}
+	}
+
+	/**
+	 * A bit stream, written most significant bit first.
+	 */
+	private static class Column
+	{
+		private long[] words = new long[4];
+		private long bitCount = 0;
+		private long[] blockOffsets = new long[1];
+		private int blockCount = 0;
+
+		// Encoder state:
+		private long previous;
+		private int leading = -1, trailing;
+
+		void append(double value, boolean blockStart)
+		{
+			long bits = Double.doubleToRawLongBits(value);
+			if(blockStart)
+			{
+				if(blockCount == blockOffsets.length)
+					blockOffsets = Arrays.copyOf(blockOffsets, 2*blockCount);
+				blockOffsets[blockCount++] = bitCount;
+				write(bits, 64);
+				leading = -1;
+			}
+			else
+			{
+				long xor = bits ^ previous;
+				if(xor == 0)
+				{
+					write(0, 1);
+				}
+				else
+				{
+					int l = Long.numberOfLeadingZeros(xor);
+					int t = Long.numberOfTrailingZeros(xor);
+					if(leading >= 0 && l >= leading && t >= trailing)
+					{
+						// Fits in the previous window:
+						write(0b10, 2);
+						write(xor >>> trailing, 64 - leading - trailing);
+					}
+					else
+					{
+						leading = l;
+						trailing = t;
+						int length = 64 - l - t;
+						write(0b11, 2);
+						write(l, 6);
+						write(length - 1, 6);
+						write(xor >>> t, length);
+					}
+				}
+			}
+			previous = bits;
+		}
+
+		private void write(long value, int bits)
+		{
+			int word = (int)(bitCount >>> 6);
+			if(word + 1 >= words.length)
+				words = Arrays.copyOf(words, words.length + (words.length >> 1) + 2);
+
+			value &= mask(bits);
+			int free = 64 - (int)(bitCount & 63);
+			if(bits <= free)
+			{
+				words[word] |= value << (free - bits);
+			}
+			else
+			{
+				int rest = bits - free;
+				words[word] |= value >>> rest;
+				words[word + 1] |= value << (64 - rest);
+			}
+			bitCount += bits;
+		}
+
+		long read(long position, int bits)
+		{
+			int word = (int)(position >>> 6);
+			int free = 64 - (int)(position & 63);
+			if(bits <= free)
+				return (words[word] >>> (free - bits)) & mask(bits);
+
+			int rest = bits - free;
+			return ((words[word] & mask(free)) << rest) | (words[word + 1] >>> (64 - rest));
+		}
+
+		private static long mask(int bits)
+		{
+			return bits == 64 ? -1L : (1L << bits) - 1;
+		}
+
+		void trimToSize()
+		{
+			words = Arrays.copyOf(words, (int)((bitCount + 63) >>> 6) + 1);
+			blockOffsets = Arrays.copyOf(blockOffsets, Math.max(1, blockCount));
+		}
+	}
+}
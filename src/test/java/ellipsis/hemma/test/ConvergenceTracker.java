@@ -0,0 +1,204 @@
+package ellipsis.hemma.test;
+
+import java.util.Collection;
+import java.util.function.BooleanSupplier;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+
+import ellipsis.hemma.Agent;
+
+/**
+ * Measures convergence while a run is in progress so that it can be stopped
+ * once the network has settled.
+ *
+ * Every window iterations a checkpoint computes the same measure as
+ * {@link Solution#convergence(double, double)}, except that the state drift
+ * is the distance from the state at the previous checkpoint rather than from
+ * the state 80% of the way through the run. The run has converged once, at 
+ * patience consecutive checkpoints, the score is within the tolerance or has
+ * changed by no more than the relative tolerance since the previous checkpoint.
+ * The latter catches runs that settle with a non-zero score, e.g. because 
+ * the gradient does not vanish at the bounds. A run whose state is no 
+ * longer finite has diverged, so is aborted rather than settled.
+ */
+public class ConvergenceTracker
+{
+	private double baseVoltage;
+	private double basePower;
+	private int window = 100;
+	private double tolerance = 0.0;
+	private double relativeTolerance = 0.0;
+	private int patience = 3;
+	private double abortThreshold = Double.POSITIVE_INFINITY;
+	private int abortAfterK = 0;
+	private BooleanSupplier cancelled = () -> false;
+
+	private double[] previousState;
+	private double[] state;
+	private double score = Double.MAX_VALUE;
+	private int checkpointK = -1;
+	private int withinTolerance = 0;
+	private boolean aborted = false;
+
+	public ConvergenceTracker(double baseVoltage, double basePower)
+	{
+		this.baseVoltage = baseVoltage;
+		this.basePower = basePower;
+	}
+
+	/**
+	 * @param window Number of iterations between checkpoints.
+	 */
+	public ConvergenceTracker withWindow(int window)
+	{
+		this.window = Math.max(1, window);
+		return this;
+	}
+
+	/**
+	 * @param tolerance The score at or below which the run is considered converged.
+	 */
+	public ConvergenceTracker withTolerance(double tolerance)
+	{
+		this.tolerance = tolerance;
+		return this;
+	}
+
+	/**
+	 * @param relativeTolerance The change in score between checkpoints, relative
+	 * to the score, at or below which the run is considered converged. 0, the
+	 * default, requires the score to be unchanged; a negative value disables this test.
+	 */
+	public ConvergenceTracker withRelativeTolerance(double relativeTolerance)
+	{
+		this.relativeTolerance = relativeTolerance;
+		return this;
+	}
+
+	/**
+	 * @param patience The number of consecutive checkpoints that must be within tolerance.
+	 */
+	public ConvergenceTracker withPatience(int patience)
+	{
+		this.patience = Math.max(1, patience);
+		return this;
+	}
+
+	/**
+	 * Gives up on runs that are still scoring above the threshold at or 
+	 * after iteration afterK. Runs whose state becomes NaN are aborted 
+	 * whatever the threshold.
+	 */
+	public ConvergenceTracker withAbortThreshold(double threshold, int afterK)
+	{
+		this.abortThreshold = threshold;
+		this.abortAfterK = afterK;
+		return this;
+	}
+
+	/**
+	 * Aborts the run at the next checkpoint once cancelled returns true, 
+	 * e.g. when its result is no longer needed.
+	 */
+	public ConvergenceTracker withCancellation(BooleanSupplier cancelled)
+	{
+		this.cancelled = cancelled;
+		return this;
+	}
+
+	/**
+	 * Clears all state ready for a new run.
+	 */
+	public void reset()
+	{
+		previousState = null;
+		state = null;
+		score = Double.MAX_VALUE;
+		checkpointK = -1;
+		withinTolerance = 0;
+		aborted = false;
+	}
+
+	/**
+	 * Called with the state after iteration k (k = 0 for the starting state).
+	 * @return true if the run has converged or been aborted.
+	 */
+	public boolean update(Collection<Agent> agents, int k)
+	{
+		if(k%window != 0)
+			return converged() || aborted();
+		if(cancelled.getAsBoolean())
+		{
+			aborted = true;
+			return true;
+		}
+
+		if(state == null)
+		{
+			state = new double[3*agents.size()];
+			previousState = new double[state.length];
+		}
+		double[] swap = previousState;
+		previousState = state;
+		state = swap;
+		int i = 0;
+		for (Agent agent : agents)
+		{
+			state[i++] = agent.getV();
+			state[i++] = agent.getvMinus();
+			state[i++] = agent.getPower();
+		}
+
+		if(checkpointK >= 0)
+		{
+			DataPoint p = GlobalMetrics.dataPoint(agents);
+			double previousScore = score;
+			score = Solution.convergence(
+					new ArrayRealVector(previousState, false),
+					new ArrayRealVector(state, false),
+					p.gradient.getNorm(), p.alpha, p.g.getNorm(),
+					baseVoltage, basePower);
+			boolean diverged = !(score < Double.MAX_VALUE); // the score of a NaN state
+			boolean settled = !diverged && (
+					score <= tolerance || 
+					Math.abs(score - previousScore) <= relativeTolerance*score);
+			withinTolerance = settled ? withinTolerance + 1 : 0;
+			aborted = diverged || k >= abortAfterK && score > abortThreshold;
+		}
+		checkpointK = k;
+
+		return converged() || aborted();
+	}
+
+	public boolean converged()
+	{
+		return withinTolerance >= patience;
+	}
+
+	/**
+	 * @return true if the run was judged hopeless, diverged or was cancelled.
+	 * @see #withAbortThreshold(double, int)
+	 */
+	public boolean aborted()
+	{
+		return aborted;
+	}
+
+	/**
+	 * @return The score at the latest checkpoint; comparable with
+	 * {@link Solution#convergence(double, double)} so lower is better and
+	 * {@link Double#MAX_VALUE} before the second checkpoint or if the state is NaN.
+	 */
+	public double getScore()
+	{
+		return score;
+	}
+
+	/**
+	 * @return The iteration of the latest checkpoint, or -1 if there has been none.
+	 */
+	public int getCheckpointK()
+	{
+		return checkpointK;
+	}
+}
@@ -0,0 +1,124 @@
+package ellipsis.hemma.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.math3.linear.RealVector;
+
+/**
+ * The values recorded for one iteration.
+ */
+public class DataPoint
+{
+	public RealVector x;
+	public double cost;
+	public double lagrange;
+	public RealVector gradient;
+	public RealVector g;
+	public RealVector epsilon;
+	public double alpha;
+	public RealVector lambda;
+	public RealVector h;
+	public RealVector hCorrection;
+	public double trueH;
+
+	/**
+	 * Metrics in row order.
+	 */
+	public static final String[] METRICS = {"x", "c(x)", "L", "g", "||g(x)||", "alpha", "epsilon", "grad", "lambda", "~h", "w", "av[h(x)]"};
+
+	/**
+	 * Number of values per agent for each metric in {@link #METRICS}; 0 for a single network wide value.
+	 */
+	public static final int[] METRIC_WIDTHS = {3, 0, 0, 2, 0, 0, 1, 3, 2, 1, 1, 0};
+
+	/**
+	 * @return The number of values in a row for a network of the given size.
+	 */
+	public static int columnCount(int agentCount)
+	{
+		int count = 0;
+		for (int width : METRIC_WIDTHS)
+			count += width == 0 ? 1 : width*agentCount;
+		return count;
+	}
+
+	/**
+	 * @param metric One of {@link #METRICS}.
+	 * @return The index in a row of the metric's first value.
+	 */
+	public static int columnOffset(String metric, int agentCount)
+	{
+		int offset = 0;
+		for (int m = 0; m < METRICS.length; m++)
+		{
+			if(METRICS[m].equals(metric))
+				return offset;
+			offset += METRIC_WIDTHS[m] == 0 ? 1 : METRIC_WIDTHS[m]*agentCount;
+		}
+		throw new IllegalArgumentException("Unknown metric "+metric);
+	}
+	
+	/**
+	 * Column names in the order of {@link #values(double[])}; these are the
+	 * headings used by {@link Solution#printCSV(int, int)}.
+	 */
+	public static List<String> columnNames(int agentCount)
+	{
+		int dimension = 3*agentCount;
+		int gDimension = 2*agentCount;
+		List<String> names = new ArrayList<>(columnCount(agentCount));
+
+		for (int i = 0; i < dimension; i++)
+			names.add("x"+i);
+		names.add("c(x)");
+		names.add("L");
+		for (int i = 0; i < gDimension; i++)
+			names.add("g"+i+"(x)");
+		names.add("||g(x)||");
+		names.add("alpha");
+		for (int i = 0; i < agentCount; i++)
+			names.add("epsilon"+i);
+		for (int i = 0; i < dimension; i++)
+			names.add("grad_x"+i+" L(x)");
+		for (int i = 0; i < gDimension; i++)
+			names.add("lambda"+i);
+		for (int i = 0; i < agentCount; i++)
+			names.add("~h"+i);
+		for (int i = 0; i < agentCount; i++)
+			names.add("w"+i);
+		names.add("av[h(x)]");
+
+		return names;
+	}
+
+	/**
+	 * Flattens this data point into a row.
+	 * @param row An array of at least {@link #columnCount(int)} values.
+	 * @return row
+	 */
+	public double[] values(double[] row)
+	{
+		int j = 0;
+		j = copy(x, row, j);
+		row[j++] = cost;
+		row[j++] = lagrange;
+		j = copy(g, row, j);
+		row[j++] = g.getNorm();
+		row[j++] = alpha;
+		j = copy(epsilon, row, j);
+		j = copy(gradient, row, j);
+		j = copy(lambda, row, j);
+		j = copy(h, row, j);
+		j = copy(hCorrection, row, j);
+		row[j++] = trueH;
+		return row;
+	}
+
+	private static int copy(RealVector v, double[] row, int j)
+	{
+		for (int i = 0; i < v.getDimension(); i++)
+			row[j++] = v.getEntry(i);
+		return j;
+	}
+}
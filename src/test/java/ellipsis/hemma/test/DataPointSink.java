@@ -0,0 +1,25 @@
+package ellipsis.hemma.test;
+
+import java.util.List;
+
+/**
+ * Destination for data points recorded by a {@link StreamingSolution}.
+ */
+public interface DataPointSink
+{
+	/**
+	 * Called once before the first data point.
+	 * @param agentNames The agents in the order their values appear in each data point.
+	 */
+	void open(List<String> agentNames);
+
+	/**
+	 * @param k The data point's index (0 is the starting state).
+	 */
+	void write(int k, DataPoint point);
+
+	/**
+	 * Called once the run is complete.
+	 */
+	void close();
+}
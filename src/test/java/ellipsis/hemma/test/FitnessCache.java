@@ -0,0 +1,159 @@
+package ellipsis.hemma.test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.math3.linear.RealVector;
+
+import ellipsis.hemma.AppendOnlyFile;
+
+/**
+ * Thread safe cache of simulation results keyed by test case, iteration
+ * budget K and DNA, with the DNA rounded to a number of significant digits
+ * so that parameters differing only by rounding share a result.
+ *
+ * If a file is given, results already in it are loaded when the cache is
+ * created and each new result is appended to it as it is added, so an
+ * interrupted tuning campaign can be resumed, and later campaigns on the
+ * same test cases reuse earlier results. Each line of the file is
+ * <pre>
+ * v{@link #VERSION} \t test case \t K \t dna entries separated by commas \t values separated by commas
+ * </pre>
+ * Lines of other versions, including those written before versioning, are
+ * ignored.
+ * Several values may be cached for one key, e.g. a number of objectives;
+ * {@link #get(String, int, RealVector)} returns the first. A later line
+ * for the same key replaces an earlier one.
+ * An incomplete last line, e.g. from a process killed part way through a
+ * write, is removed when the file is loaded.
+ */
+public class FitnessCache
+{
+	/**
+	 * Shared by tuning campaigns unless another file is given.
+	 */
+	public static final File DEFAULT_FILE = new File("/opt/hemma/log/fitness.cache");
+
+	/**
+	 * Part of every key. Increment it whenever a change to the simulation or
+	 * to the measures changes results, so earlier results are not reused:
+	 * 2: iteration order made reproducible, and each message counted once.
+	 */
+	public static final int VERSION = 2;
+
+	private static final int DEFAULT_DIGITS = 10;
+
+	private final Map<String, double[]> values = new ConcurrentHashMap<>();
+	private final AppendOnlyFile file;
+	private final int digits;
+
+	/**
+	 * An in-memory cache.
+	 */
+	public FitnessCache()
+	{
+		this(null, DEFAULT_DIGITS);
+	}
+
+	/**
+	 * @param file Append-only store; null for an in-memory cache.
+	 */
+	public FitnessCache(File file)
+	{
+		this(file, DEFAULT_DIGITS);
+	}
+
+	/**
+	 * @param file Append-only store; null for an in-memory cache.
+	 * @param digits Significant digits of each DNA entry in the key.
+	 */
+	public FitnessCache(File file, int digits)
+	{
+		this.file = file == null ? null : new AppendOnlyFile(file);
+		this.digits = digits;
+		if(file != null)
+			load();
+	}
+
+	/**
+	 * @return The first cached value or null if there is none.
+	 */
+	public Double get(String testCase, int K, RealVector dna)
+	{
+		double[] cached = values.get(key(testCase, K, dna));
+		return cached == null ? null : cached[0];
+	}
+
+	/**
+	 * @return All cached values or null if there are none.
+	 */
+	public double[] getValues(String testCase, int K, RealVector dna)
+	{
+		double[] cached = values.get(key(testCase, K, dna));
+		return cached == null ? null : cached.clone();
+	}
+
+	/**
+	 * Caches the values and appends them to the file, if any.
+	 */
+	public void put(String testCase, int K, RealVector dna, double... values)
+	{
+		String key = key(testCase, K, dna);
+		double[] previous = this.values.put(key, values.clone());
+		if(file != null && !Arrays.equals(previous, values))
+		{
+			StringBuilder line = new StringBuilder(key).append('\t');
+			for (int i = 0; i < values.length; i++)
+			{
+				if(i > 0)
+					line.append(',');
+				line.append(values[i]);
+			}
+			file.append(line.toString());
+		}
+	}
+
+	public int size()
+	{
+		return values.size();
+	}
+
+	private String key(String testCase, int K, RealVector dna)
+	{
+		StringBuilder key = new StringBuilder("v").append(VERSION).append('\t')
+				.append(testCase).append('\t').append(K).append('\t');
+		for (int i = 0; i < dna.getDimension(); i++)
+		{
+			if(i > 0)
+				key.append(',');
+			key.append(String.format(Locale.ROOT, "%."+(digits-1)+"e", dna.getEntry(i)));
+		}
+		return key.toString();
+	}
+
+	private void load()
+	{
+		file.load(line ->
+		{
+			String[] fields = line.split("\t", -1);
+			if(fields.length == 5 && fields[0].equals("v"+VERSION))
+			{
+				try
+				{
+					String[] entries = fields[4].split(",");
+					double[] parsed = new double[entries.length];
+					for (int i = 0; i < entries.length; i++)
+						parsed[i] = Double.parseDouble(entries[i]);
+					values.put(line.substring(0, line.lastIndexOf('\t')), parsed);
+				}
+				catch (NumberFormatException e)
+				{
+					// Corrupt line.
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,182 @@
+package ellipsis.hemma.test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.stream.IntStream;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealVector;
+
+import ellipsis.hemma.Agent;
+import ellipsis.hemma.EvaluationContext;
+
+/**
+ * Evaluates the network wide metrics recorded by {@link Solution} in a single
+ * pass over the agents, calling each agent's {@link Agent#gPlus()} and
+ * {@link Agent#gMinus()} once.
+ *
+ * Agents are split into fixed size blocks. Each block accumulates its own
+ * partial sums and the partial sums are added in block order, so results do
+ * not depend on whether, or on how many threads, the blocks were evaluated
+ * in parallel. Networks with no more than one block are summed in the same
+ * order as a plain sequential loop.
+ */
+public class GlobalMetrics
+{
+	private static final int BLOCK_SIZE = 512;
+	private static final int PARALLEL_THRESHOLD = 4*BLOCK_SIZE;
+
+	// Partial sums:
+	private static final int COST = 0;
+	private static final int LAMBDA_PLUS_G = 1;
+	private static final int LAMBDA_MINUS_G = 2;
+	private static final int ALPHA_G_PLUS = 3;
+	private static final int ALPHA_G_MINUS = 4;
+	private static final int TRUE_H = 5;
+	private static final int SUM_COUNT = 6;
+
+	private GlobalMetrics()
+	{
+	}
+
+	/**
+	 * @return The augmented Lagrangian,
+	 * c(x) + sum(lambda+ g+) + sum(lambda- g-) + sum(alpha g+^2/2) + sum(alpha g-^2/2).
+	 */
+	public static double lagrange(Collection<Agent> agents)
+	{
+		Agent[] a = agents.toArray(new Agent[agents.size()]);
+		return lagrange(evaluate(a, null, null));
+	}
+
+	private static double lagrange(double[] sums)
+	{
+		return
+			sums[COST] +
+			sums[LAMBDA_PLUS_G] +
+			sums[LAMBDA_MINUS_G] +
+			sums[ALPHA_G_PLUS] +
+			sums[ALPHA_G_MINUS];
+	}
+
+	/**
+	 * @return All values recorded for the current state of the agents.
+	 */
+	public static DataPoint dataPoint(Collection<Agent> agents)
+	{
+		Agent[] a = agents.toArray(new Agent[agents.size()]);
+		int n = a.length;
+
+		DataPoint p = new DataPoint();
+		double[] x = new double[3*n];
+		double[] gradient = new double[3*n];
+		double[] g = new double[2*n];
+		double[] epsilon = new double[n];
+		double[] lambda = new double[2*n];
+		double[] h = new double[n];
+		double[] hCorrection = new double[n];
+		double[] sums = evaluate(a, i ->
+		{
+			Agent agent = a[i];
+			x[3*i] = agent.getV();
+			x[3*i+1] = agent.getvMinus();
+			x[3*i+2] = agent.getPower();
+			RealVector grad = agent.gradientNoAug();
+			for (int j = 0; j < 3; j++)
+				gradient[3*i+j] = Math.abs(grad.getEntry(j));
+			epsilon[i] = agent.getEpsilon();
+			lambda[2*i] = agent.getLambdaPlus();
+			lambda[2*i+1] = agent.getLambdaMinus();
+			h[i] = agent.getAverageConvergenceApproximation();
+			hCorrection[i] = agent.getAverageConvergenceCorrection();
+		}, g);
+
+		p.x = new ArrayRealVector(x, false);
+		p.cost = sums[COST];
+		p.lagrange = lagrange(sums);
+		p.gradient = new ArrayRealVector(gradient, false);
+		p.g = new ArrayRealVector(g, false);
+		p.epsilon = new ArrayRealVector(epsilon, false);
+		p.alpha = a[0].getAlpha();
+		p.lambda = new ArrayRealVector(lambda, false);
+		p.h = new ArrayRealVector(h, false);
+		p.hCorrection = new ArrayRealVector(hCorrection, false);
+		p.trueH = sums[TRUE_H]/n;
+		return p;
+	}
+
+	/**
+	 * @param perAgent Optionally records values for each agent index.
+	 * @param g Optionally receives g+ and g- for each agent.
+	 * @return The network wide sums.
+	 */
+	private static double[] evaluate(Agent[] agents, PerAgent perAgent, double[] g)
+	{
+		int blockCount = (agents.length + BLOCK_SIZE - 1)/BLOCK_SIZE;
+		double[][] partials = new double[blockCount][];
+		EvaluationContext context = EvaluationContext.of(Arrays.asList(agents));
+		boolean useCache = context.isUsingCache();
+
+		IntStream blocks = IntStream.range(0, blockCount);
+		if(agents.length >= PARALLEL_THRESHOLD)
+			blocks = blocks.parallel();
+		blocks.forEach(b ->
+		{
+			// Worker threads must read neighbour values the same way as the caller:
+			boolean previous = context.isUsingCache();
+			context.setUseCache(useCache);
+			try
+			{
+				partials[b] = evaluateBlock(agents, b*BLOCK_SIZE, Math.min(agents.length, (b+1)*BLOCK_SIZE), perAgent, g);
+			}
+			finally
+			{
+				context.setUseCache(previous);
+			}
+		});
+
+		// Combine in block order:
+		double[] sums = new double[SUM_COUNT];
+		for (double[] partial : partials)
+		{
+			for (int s = 0; s < SUM_COUNT; s++)
+				sums[s] += partial[s];
+		}
+		return sums;
+	}
+
+	private static double[] evaluateBlock(Agent[] agents, int from, int to, PerAgent perAgent, double[] g)
+	{
+		double[] sums = new double[SUM_COUNT];
+		for (int i = from; i < to; i++)
+		{
+			Agent agent = agents[i];
+			double gPlus = agent.gPlus();
+			double gMinus = agent.gMinus();
+			double alpha = agent.getAlpha();
+
+			sums[COST] += agent.cost();
+			sums[LAMBDA_PLUS_G] += agent.getLambdaPlus()*gPlus;
+			sums[LAMBDA_MINUS_G] += agent.getLambdaMinus()*gMinus;
+			sums[ALPHA_G_PLUS] += alpha*gPlus*gPlus/2.0;
+			sums[ALPHA_G_MINUS] += alpha*gMinus*gMinus/2.0;
+
+			if(g != null)
+			{
+				g[2*i] = gPlus;
+				g[2*i+1] = gMinus;
+			}
+			if(perAgent != null)
+			{
+				sums[TRUE_H] += agent.getPreviousConvergenceMeasure();
+				perAgent.record(i);
+			}
+		}
+		return sums;
+	}
+
+	private interface PerAgent
+	{
+		void record(int i);
+	}
+}
@@ -0,0 +1,269 @@
+package ellipsis.hemma.test;
+
+import java.util.Arrays;
+
+/**
+ * Partitions a graph given in compressed sparse row form into parts of
+ * roughly equal size with few cut lines. Parts are grown breadth first from
+ * a pseudo-peripheral bus, then refined by greedily moving boundary buses
+ * to the neighbouring part holding most of their lines.
+ */
+public class GraphPartitioner
+{
+	public static class Partition
+	{
+		private final int[] part;
+		private final int[] sizes;
+		private final int cut;
+
+		Partition(int[] part, int[] sizes, int cut)
+		{
+			this.part = part;
+			this.sizes = sizes;
+			this.cut = cut;
+		}
+
+		/**
+		 * @return The part index of each bus.
+		 */
+		public int[] parts()
+		{
+			return part;
+		}
+
+		public int partCount()
+		{
+			return sizes.length;
+		}
+
+		public int size(int p)
+		{
+			return sizes[p];
+		}
+
+		/**
+		 * @return The number of lines with ends in different parts.
+		 */
+		public int cut()
+		{
+			return cut;
+		}
+
+		/**
+		 * @return Largest part size over the mean part size.
+		 */
+		public double imbalance()
+		{
+			int max = 0;
+			for (int s : sizes)
+				max = Math.max(max, s);
+			return max*(double)sizes.length/part.length;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "parts="+sizes.length+", sizes="+Arrays.toString(sizes)+", imbalance="+imbalance()+", cut="+cut;
+		}
+	}
+
+	private double tolerance = 0.03; // allowed imbalance during refinement
+	private int refinementPasses = 4;
+
+	public GraphPartitioner withTolerance(double tolerance)
+	{
+		this.tolerance = tolerance;
+		return this;
+	}
+
+	public GraphPartitioner withRefinementPasses(int passes)
+	{
+		this.refinementPasses = passes;
+		return this;
+	}
+
+	/**
+	 * @param offsets CSR offsets; the neighbours of i are neighbours[offsets[i]..offsets[i+1]).
+	 * @param neighbours CSR adjacency.
+	 * @param partCount Number of parts.
+	 */
+	public Partition partition(int[] offsets, int[] neighbours, int partCount)
+	{
+		int n = offsets.length-1;
+		partCount = Math.max(1, Math.min(partCount, n));
+
+		int[] part = new int[n];
+		Arrays.fill(part, -1);
+		int[] sizes = new int[partCount];
+
+		grow(offsets, neighbours, part, sizes);
+		for(int pass = 0; pass < refinementPasses; ++pass)
+		{
+			if(refine(offsets, neighbours, part, sizes) == 0)
+				break;
+		}
+
+		return new Partition(part, sizes, cut(offsets, neighbours, part));
+	}
+
+
+	//// Growing ////
+
+	private void grow(int[] offsets, int[] neighbours, int[] part, int[] sizes)
+	{
+		int n = part.length;
+		int partCount = sizes.length;
+		int[] queue = new int[n];
+		int assigned = 0;
+		int scan = 0; // next candidate when a part is cut off from unassigned buses
+		int seed = peripheral(offsets, neighbours, 0);
+
+		for(int p = 0; p < partCount; ++p)
+		{
+			int target = (n - assigned)/(partCount - p);
+			int head = 0, tail = 0;
+
+			while(sizes[p] < target)
+			{
+				if(head == tail)
+				{
+					// Start (or restart) the part from an unassigned bus:
+					if(seed < 0 || part[seed] >= 0)
+					{
+						while(part[scan] >= 0)
+							++scan;
+						seed = scan;
+					}
+					part[seed] = p;
+					++sizes[p];
+					queue[tail++] = seed;
+					seed = -1;
+					continue;
+				}
+
+				int v = queue[head++];
+				for(int j = offsets[v]; j < offsets[v+1] && sizes[p] < target; ++j)
+				{
+					int u = neighbours[j];
+					if(part[u] < 0)
+					{
+						part[u] = p;
+						++sizes[p];
+						queue[tail++] = u;
+					}
+				}
+			}
+			assigned += sizes[p];
+
+			// Seed the next part from this part's frontier so that parts stay compact:
+			seed = -1;
+			for(int i = head; i < tail && seed < 0; ++i)
+			{
+				int v = queue[i];
+				for(int j = offsets[v]; j < offsets[v+1]; ++j)
+				{
+					if(part[neighbours[j]] < 0)
+					{
+						seed = neighbours[j];
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The last bus reached by a breadth first search from start.
+	 */
+	private static int peripheral(int[] offsets, int[] neighbours, int start)
+	{
+		int n = offsets.length-1;
+		if(n == 0)
+			return -1;
+		boolean[] seen = new boolean[n];
+		int[] queue = new int[n];
+		int head = 0, tail = 0;
+		queue[tail++] = start;
+		seen[start] = true;
+		while(head < tail)
+		{
+			int v = queue[head++];
+			for(int j = offsets[v]; j < offsets[v+1]; ++j)
+			{
+				int u = neighbours[j];
+				if(!seen[u])
+				{
+					seen[u] = true;
+					queue[tail++] = u;
+				}
+			}
+		}
+		return queue[tail-1];
+	}
+
+
+	//// Refinement ////
+
+	/**
+	 * Moves boundary buses with positive gain while keeping part sizes within tolerance.
+	 * @return The number of buses moved.
+	 */
+	private int refine(int[] offsets, int[] neighbours, int[] part, int[] sizes)
+	{
+		int n = part.length;
+		int partCount = sizes.length;
+		int maxSize = (int)Math.ceil((1.0 + tolerance)*n/partCount);
+		int minSize = (int)Math.floor((1.0 - tolerance)*n/partCount);
+		int[] links = new int[partCount];
+		int moved = 0;
+
+		for(int v = 0; v < n; ++v)
+		{
+			int from = part[v];
+			boolean boundary = false;
+			for(int j = offsets[v]; j < offsets[v+1]; ++j)
+			{
+				int p = part[neighbours[j]];
+				++links[p];
+				boundary |= p != from;
+			}
+
+			if(boundary && sizes[from] > minSize)
+			{
+				int best = from;
+				for(int j = offsets[v]; j < offsets[v+1]; ++j)
+				{
+					int p = part[neighbours[j]];
+					if(links[p] > links[best] && sizes[p] < maxSize)
+						best = p;
+				}
+				if(best != from)
+				{
+					part[v] = best;
+					--sizes[from];
+					++sizes[best];
+					++moved;
+				}
+			}
+
+			for(int j = offsets[v]; j < offsets[v+1]; ++j)
+				links[part[neighbours[j]]] = 0;
+		}
+
+		return moved;
+	}
+
+	private static int cut(int[] offsets, int[] neighbours, int[] part)
+	{
+		int cut = 0;
+		for(int v = 0; v < part.length; ++v)
+		{
+			for(int j = offsets[v]; j < offsets[v+1]; ++j)
+			{
+				if(neighbours[j] > v && part[neighbours[j]] != part[v])
+					++cut;
+			}
+		}
+		return cut;
+	}
+}
@@ -1,23 +1,47 @@
 package ellipsis.hemma.test;
 
-import static ellipsis.common.ListUtil.setEach;
-
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 
 import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.RealVector;
 
-import ellipsis.common.ThreadPool;
+import ellipsis.genetics.BayesianOptimiser;
+import ellipsis.genetics.CMAESSolver;
+import ellipsis.genetics.DifferentialEvolutionSolver;
+import ellipsis.genetics.GeneticSolver;
 import ellipsis.genetics.GeneticSolver.Creator;
 import ellipsis.genetics.GeneticSolver.FitnessFunction;
 import ellipsis.genetics.GeneticSolver.Mutator;
+import ellipsis.genetics.IslandGeneticSolver;
+import ellipsis.genetics.IslandGeneticSolver.Topology;
+import ellipsis.genetics.NSGA2Solver;
+import ellipsis.genetics.NSGA2Solver.Individual;
+import ellipsis.genetics.SteadyStateGeneticSolver;
 import ellipsis.genetics.VectorGeneticSolver;
 import ellipsis.hemma.Agent;
+import ellipsis.hemma.HemmaParameters;
+import ellipsis.hemma.ParameterStore;
+import ellipsis.hemma.TopologyFingerprint;
 import ellipsis.hemma.test.testcases.TestCase;
 import ellipsis.hemma.test.testcases.TestCase002_8Bus;
+import ellipsis.hemma.test.testcases.TestCase003_Generated;
 
 /**
  * Tune HEMMA optimisation parameters with a Genetic Algorithm. 
@@ -27,12 +51,63 @@ import ellipsis.hemma.test.testcases.TestCase002_8Bus;
  *       [ lambda multiplier  ]     
  *       [ initial epsilon    ]     
  *       [ epsilon multiplier ]     
+ * 
+ * Each candidate is evaluated on a suite of scenarios, by default just the 
+ * given test case, and scored by a quantile of their convergence measures, 
+ * by default the worst, so that the parameters suit every network in the 
+ * suite rather than one graph.
  */
 public class HemmaTuner<TC extends TestCase> implements FitnessFunction<RealVector>, Creator<RealVector>, Mutator<RealVector>
 {
+	// Bounds of each parameter for the continuous optimisers:
+	private static final double[] LOWER = {1e-3, 1.0,  1e-3, 1e-6, 0.95};
+	private static final double[] UPPER = {2.0,  1.05, 1.0,  0.5,  0.999999};
+	
+	// Measures of each run:
+	public static final int CONVERGENCE = 0;
+	public static final int MESSAGES = 1;
+	public static final int CPU_SECONDS = 2;
+	private static final int MEASURE_COUNT = 3;
+	
 	private Class<TC> testCaseClass;
 	private int K;
-	private Map<RealVector, Double> solutionFitnesses = new HashMap<>();
+	
+	// Test cases each candidate is evaluated on, by name; empty for just the test case class:
+	private Map<String, Supplier<? extends TestCase>> scenarios = new LinkedHashMap<>();
+	private double quantile = 1.0;
+	private ForkJoinPool scenarioPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	
+	// Convergence for each scenario and iteration budget, and aggregate for each budget; evaluated concurrently:
+	private FitnessCache cache = new FitnessCache();
+	private Map<String, Double> bestConvergence = new ConcurrentHashMap<>();
+	private Map<Integer, Double> bestAggregate = new ConcurrentHashMap<>();
+	
+	/**
+	 * The best scores as of some point in the campaign, against which runs 
+	 * are aborted and candidates found dominated.
+	 */
+	private static class Bests
+	{
+		final Map<String, Double> convergence; // by scenario and budget
+		final Map<Integer, Double> aggregate; // by budget
+		
+		Bests(Map<String, Double> convergence, Map<Integer, Double> aggregate)
+		{
+			this.convergence = new HashMap<>(convergence);
+			this.aggregate = new HashMap<>(aggregate);
+		}
+	}
+	
+	// Root of the campaign's random streams; split for each solver:
+	private SplittableRandom random = new SplittableRandom();
+	
+	// Records the solution of each campaign; null for none:
+	private ParameterStore parameterStore;
+	
+	// Successive halving:
+	private int eta = 3;
+	private int rungs = 0;
+	private double abortFactor = 10.0;
 	
 	public HemmaTuner(Class<TC> testCaseClass, int K) 
 	{
@@ -40,31 +115,351 @@ public class HemmaTuner<TC extends TestCase> implements FitnessFunction<RealVect
 		this.K = K;
 	}
 	
+	/**
+	 * Seeds the campaign so that it can be reproduced. Candidates evaluated 
+	 * together by {@link #race(RealVector[], double[], int) racing} are 
+	 * aborted or found dominated against the best scores from earlier rungs 
+	 * and generations only, so the results don't depend on which finishes 
+	 * first. Islands share best scores, and candidates evaluated one by one 
+	 * by other solvers see those of candidates that finished before them, 
+	 * so are only reproducible when evaluated sequentially.
+	 */
+	public HemmaTuner<TC> withSeed(long seed)
+	{
+		this.random = new SplittableRandom(seed);
+		return this;
+	}
+	
+	/**
+	 * Caches convergence results, e.g. in a {@link FitnessCache#FitnessCache(java.io.File) file} 
+	 * so that an interrupted campaign can be resumed without re-simulating.
+	 * Aborted runs are not cached: their scores are lower bounds that depend 
+	 * on the best seen by the campaign that ran them.
+	 */
+	public HemmaTuner<TC> withCache(FitnessCache cache)
+	{
+		this.cache = cache;
+		return this;
+	}
+	
+	/**
+	 * Adds a scenario to the suite each candidate is evaluated on in place 
+	 * of the test case class.
+	 * @param name Identifies the scenario's results in the cache.
+	 * @param testCase Makes a new test case for each run.
+	 */
+	public HemmaTuner<TC> withScenario(String name, Supplier<? extends TestCase> testCase)
+	{
+		scenarios.put(name, testCase);
+		return this;
+	}
+	
+	/**
+	 * Adds a generated network of each topology for each seed to the suite.
+	 * @see #withScenario(String, Supplier)
+	 */
+	public HemmaTuner<TC> withGeneratedScenarios(int busCount, long... seeds)
+	{
+		for (NetworkGenerator.Topology topology : NetworkGenerator.Topology.values())
+		{
+			for (long seed : seeds)
+			{
+				String name = new TestCase003_Generated(topology, busCount, seed).toString();
+				withScenario(name, () -> new TestCase003_Generated(topology, busCount, seed));
+			}
+		}
+		return this;
+	}
+	
+	/**
+	 * @param quantile The quantile of the scenarios' convergence measures 
+	 * that scores a candidate; 1, the default, takes the worst case and 0.5 
+	 * the median.
+	 */
+	public HemmaTuner<TC> withQuantile(double quantile)
+	{
+		this.quantile = quantile;
+		return this;
+	}
+	
+	/**
+	 * @param parallelism The number of scenario runs executed at once, 
+	 * shared by all candidates evaluated concurrently.
+	 */
+	public HemmaTuner<TC> withScenarioParallelism(int parallelism)
+	{
+		this.scenarioPool = new ForkJoinPool(parallelism);
+		return this;
+	}
+	
+	/**
+	 * Records the solution for the fingerprint of each scenario, e.g. in the 
+	 * {@link ParameterStore#shared() shared} store so that networks built 
+	 * later, including those of the next campaign, start from it.
+	 */
+	public HemmaTuner<TC> withParameterStore(ParameterStore store)
+	{
+		this.parameterStore = store;
+		return this;
+	}
+	
+	/**
+	 * Evaluates new candidates by successive halving: all are run for 
+	 * K/eta^rungs iterations, the best 1/eta of those are run for 
+	 * K/eta^(rungs-1) iterations, and so on until the best are run for K 
+	 * iterations. Runs scoring worse than abortFactor times the best score 
+	 * seen for the same budget half way through are aborted, except by 
+	 * {@link #solveMultiObjective(int)}, which needs every run's full cost.
+	 * @param rungs The number of shorter budgets; 0 evaluates every candidate for K iterations.
+	 */
+	public HemmaTuner<TC> withRacing(int eta, int rungs, double abortFactor)
+	{
+		this.eta = eta;
+		this.rungs = rungs;
+		this.abortFactor = abortFactor;
+		return this;
+	}
+	
 	@Override
 	public double fitness(RealVector dna) 
 	{
-		Double fitness = solutionFitnesses.get(dna);
-		if(fitness == null)
+		return -convergence(dna, K);
+	}
+	
+	/**
+	 * @return The aggregate convergence measure over the scenarios after 
+	 * runs of at most budget iterations.
+	 */
+	protected double convergence(RealVector dna, int budget)
+	{
+		return evaluate(dna, budget, true, snapshot())[CONVERGENCE];
+	}
+	
+	/**
+	 * Runs a simulation of each scenario of at most budget iterations, 
+	 * stopping each early once it has settled, but not if it is hopeless, 
+	 * so that the cost measures of diverging runs are complete.
+	 * @return The aggregate convergence measure, and the number of messages 
+	 * received by all agents and the CPU seconds taken by the simulating 
+	 * threads summed over the scenarios; indexed by {@link #CONVERGENCE}, 
+	 * {@link #MESSAGES} and {@link #CPU_SECONDS}.
+	 */
+	protected double[] measure(RealVector dna, int budget)
+	{
+		return evaluate(dna, budget, false, snapshot());
+	}
+	
+	private Bests snapshot()
+	{
+		return new Bests(bestConvergence, bestAggregate);
+	}
+	
+	/**
+	 * Runs the scenarios in parallel.
+	 * If convergenceOnly, only the convergence measure is required, so 
+	 * results cached without the other measures are used, and a candidate 
+	 * is dominated once, in suite order, enough scenarios have scored worse 
+	 * than the best aggregate seen for the budget that it cannot beat it. 
+	 * The runs of scenarios after the one where that happens are cancelled, 
+	 * and the candidate is scored by the worst of the scenarios up to it, 
+	 * ranking it below the best. The score of a dominated candidate is 
+	 * therefore independent of the order in which runs finish.
+	 * @param bests The best scores to abort runs and find the candidate 
+	 * dominated against.
+	 */
+	private double[] evaluate(RealVector dna, int budget, boolean convergenceOnly, Bests bests)
+	{
+		Map<String, Supplier<? extends TestCase>> suite = suite();
+		int n = suite.size();
+		int rank = Math.min(n, Math.max(1, (int)Math.ceil(quantile*n))); // of the aggregate, in ascending order
+		int tolerated = n - rank; // scores that may be worse than the best without the aggregate being so
+		double best = bests.aggregate.getOrDefault(budget, Double.POSITIVE_INFINITY);
+		double[][] results = new double[n][];
+		AtomicInteger dominatedAt = new AtomicInteger(n); // suite index; runs after it are cancelled
+		int required = convergenceOnly ? 1 : MEASURE_COUNT;
+		Executor executor = n == 1 ? Runnable::run : scenarioPool;
+		
+		List<CompletableFuture<double[]>> runs = new ArrayList<>(n);
+		int index = 0;
+		for (Map.Entry<String, Supplier<? extends TestCase>> scenario : suite.entrySet())
+		{
+			int i = index++;
+			BooleanSupplier cancelled = convergenceOnly ? () -> i > dominatedAt.get() : () -> false;
+			runs.add(CompletableFuture.supplyAsync(() ->
+				{
+					double[] measures = measure(scenario.getKey(), scenario.getValue(), dna, budget, required, cancelled, bests);
+					if(convergenceOnly && measures != null)
+						finished(results, i, measures, best, tolerated, dominatedAt);
+					return measures;
+				}, executor));
+		}
+		
+		double[] aggregate = new double[MEASURE_COUNT];
+		double[] convergence = new double[n];
+		int finished = 0;
+		for (CompletableFuture<double[]> run : runs)
+		{
+			double[] measures = run.join();
+			if(measures == null)
+				continue;
+			convergence[finished++] = measures[CONVERGENCE];
+			for (int i = 1; i < measures.length && i < MEASURE_COUNT; i++)
+				aggregate[i] += measures[i];
+		}
+		if(dominatedAt.get() < n)
+		{
+			aggregate[CONVERGENCE] = 0;
+			for (int i = 0; i <= dominatedAt.get(); i++)
+				aggregate[CONVERGENCE] = Math.max(aggregate[CONVERGENCE], results[i][CONVERGENCE]);
+		}
+		else
+		{
+			Arrays.sort(convergence, 0, finished);
+			aggregate[CONVERGENCE] = convergence[rank-1];
+			bestAggregate.merge(budget, aggregate[CONVERGENCE], Math::min);
+		}
+		return aggregate;
+	}
+	
+	/**
+	 * Records the result of a scenario's run and finds the first scenario, 
+	 * if any, at which the candidate is dominated considering only 
+	 * scenarios before it in suite order, all of which have finished.
+	 */
+	private static void finished(double[][] results, int index, double[] measures, double best, int tolerated, AtomicInteger dominatedAt)
+	{
+		synchronized(results)
+		{
+			results[index] = measures;
+			int worse = 0;
+			for (int i = 0; i < results.length - 1 && results[i] != null; i++)
+			{
+				if(results[i][CONVERGENCE] > best && ++worse > tolerated)
+				{
+					dominatedAt.set(i);
+					return;
+				}
+			}
+		}
+	}
+	
+	private Map<String, Supplier<? extends TestCase>> suite()
+	{
+		return scenarios.isEmpty() ? 
+				Collections.singletonMap(testCaseClass.getSimpleName(), this::testCase) : 
+				scenarios;
+	}
+	
+	/**
+	 * Runs a simulation of one scenario.
+	 * @param required The number of measures needed for a cached result to be used.
+	 * @return The measures of the scenario, or null if the run was cancelled.
+	 * The convergence measure of an aborted run is a lower bound.
+	 */
+	private double[] measure(String scenario, Supplier<? extends TestCase> testCase, RealVector dna, int budget, int required, BooleanSupplier cancelled, Bests bests)
+	{
+		String key = scenario+"\t"+budget;
+		double[] measures = cache.getValues(scenario, budget, dna);
+		if(measures != null && measures.length >= required)
+		{
+			bestConvergence.merge(key, measures[CONVERGENCE], Math::min);
+			return measures;
+		}
+		if(cancelled.getAsBoolean())
+			return null;
+		
+		ConvergenceTracker tracker = new ConvergenceTracker(1.0, 10.0)
+				.withCancellation(cancelled);
+		// An aborted run's messages and CPU time are only those up to the abort, so would look cheap:
+		if(required < MEASURE_COUNT)
+		{
+			double best = bests.convergence.getOrDefault(key, Double.POSITIVE_INFINITY);
+			tracker.withAbortThreshold(abortFactor*best, budget/2);
+		}
+		TestCase tc = testCase.get().withConvergenceTracker(tracker);
+		Set<Agent> agents = tc.init();
+		setParameters(agents, dna);
+		agents.forEach(Agent::switchOn);
+		
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		boolean cpuTimeSupported = threads.isCurrentThreadCpuTimeSupported();
+		long start = cpuTimeSupported ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+		Solution solution = tc.optimise(agents, budget);
+		long end = cpuTimeSupported ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+		if(tracker.aborted() && cancelled.getAsBoolean())
+			return null;
+		
+		measures = new double[MEASURE_COUNT];
+		measures[CONVERGENCE] = solution.convergence(1.0, 10.0);
+		if(tracker.aborted())
+			measures[CONVERGENCE] = Math.max(measures[CONVERGENCE], tracker.getScore());
+		for (Agent agent : agents)
+			measures[MESSAGES] += agent.getHemmaProtocol().getMessageCount();
+		measures[CPU_SECONDS] = (end - start)*1e-9;
+		
+		if(!tracker.aborted())
+			cache.put(scenario, budget, dna, measures);
+		bestConvergence.merge(key, measures[CONVERGENCE], Math::min);
+		return measures;
+	}
+	
+	/**
+	 * Successive halving over the unevaluated members of the population.
+	 * Candidates eliminated early are ranked below every candidate run for 
+	 * K iterations, and those eliminated at a shorter budget below those 
+	 * eliminated at a longer one.
+	 * @see #withRacing(int, int, double)
+	 */
+	public void race(RealVector[] population, double[] fitness, int from)
+	{
+		List<Integer> candidates = new ArrayList<>();
+		for (int i = from; i < population.length; i++)
+		{
+			if(Double.isNaN(fitness[i]))
+				candidates.add(i);
+		}
+		
+		double[] score = new double[population.length];
+		int[] eliminatedAt = new int[population.length];
+		for (int r = 0; r <= rungs; r++)
 		{
-			TestCase tc = testCase();
-			Set<Agent> agents = tc.init();
-			setParameters(agents, dna);
-			Solution solution = tc.optimise(agents, K);
-			fitness = -solution.convergence(1.0, 10.0);
+			int budget = (int)(K/Math.pow(eta, rungs - r));
+			final List<Integer> rung = candidates;
+			Bests bests = snapshot(); // so the rung's candidates don't see each other's results
+			rung.parallelStream().forEach(i -> score[i] = evaluate(population[i], budget, true, bests)[CONVERGENCE]);
+			if(r == rungs)
+			{
+				for (int i : rung)
+					fitness[i] = -score[i];
+				break;
+			}
 			
-			solutionFitnesses.put(dna, fitness);
+			// Promote the best 1/eta:
+			candidates = new ArrayList<>(rung);
+			candidates.sort((a, b) -> Double.compare(score[a], score[b]));
+			int promoted = Math.max(1, (int)Math.ceil(candidates.size()/(double)eta));
+			for (int i : candidates.subList(promoted, candidates.size()))
+				eliminatedAt[i] = r;
+			candidates = candidates.subList(0, promoted);
 		}
 		
-		return fitness;
+		// Rank eliminated candidates below all full length runs:
+		double floor = Double.POSITIVE_INFINITY;
+		for (double f : fitness)
+		{
+			if(!Double.isNaN(f))
+				floor = Math.min(floor, f);
+		}
+		for (int i = from; i < population.length; i++)
+		{
+			if(Double.isNaN(fitness[i]))
+				fitness[i] = floor - (rungs - eliminatedAt[i]) - score[i]/(1 + score[i]);
+		}
 	}
 
 	private void setParameters(Set<Agent> agents, RealVector dna) 
 	{
-		setEach(agents, Agent::setAlpha,            dna.getEntry(0));
-        setEach(agents, Agent::setAlphaMultiplier,  dna.getEntry(1));
-        setEach(agents, Agent::setLambdaMultiplier, dna.getEntry(2));
-        setEach(agents, Agent::setEpsilon,          dna.getEntry(3));
-        setEach(agents, Agent::setEpsilonMultiplier,dna.getEntry(4));
+		HemmaParameters.of(dna.toArray()).applyTo(agents);
 	}
 
 
@@ -76,6 +471,11 @@ public class HemmaTuner<TC extends TestCase> implements FitnessFunction<RealVect
 
 	@Override
 	public RealVector create() 
+	{
+		return create(random);
+	}
+	
+	protected RealVector create(SplittableRandom random) 
 	{
 		RealVector dna = new ArrayRealVector(5);
 		Agent agent = testCase().init().iterator().next(); // After initialisation all agents are the same so just get the first one's parameters.
@@ -85,19 +485,23 @@ public class HemmaTuner<TC extends TestCase> implements FitnessFunction<RealVect
 		dna.setEntry(3, agent.getEpsilon());           // initial epsilon   
 		dna.setEntry(4, agent.getEpsilonMultiplier()); // epsilon multiplier
 		
-		return mutate(dna);
+		return mutate(dna, random);
 	}
 
-	static Random mutateRand = new Random();
 	@Override
 	public RealVector mutate(RealVector dna) 
+	{
+		return mutate(dna, random);
+	}
+	
+	protected RealVector mutate(RealVector dna, SplittableRandom random) 
 	{
 		RealVector mutated = new ArrayRealVector(dna.getDimension());
-		mutated.setEntry(0, Math.max(1e-6,     dna.getEntry(0)+(1-2*mutateRand.nextDouble())*0.5)  ); // initial alpha      - must be > 0
-		mutated.setEntry(1, Math.max(1.0,      dna.getEntry(1)+(1-2*mutateRand.nextDouble())*0.01) ); // alpha multiplier   - must be > 1  
-		mutated.setEntry(2, Math.max(1e-6,     dna.getEntry(2)+(1-2*mutateRand.nextDouble())*0.1)  ); // lambda multiplier  - must be > 0 
-		mutated.setEntry(3, Math.max(1e-6,     dna.getEntry(3)+(1-2*mutateRand.nextDouble())*0.1)  ); // initial epsilon    - must be > 0
-		mutated.setEntry(4, Math.min(0.999999, dna.getEntry(4)+(1-2*mutateRand.nextDouble())*0.01) ); // epsilon multiplier - must be < 1
+		mutated.setEntry(0, Math.max(1e-6,     dna.getEntry(0)+(1-2*random.nextDouble())*0.5)  ); // initial alpha      - must be > 0
+		mutated.setEntry(1, Math.max(1.0,      dna.getEntry(1)+(1-2*random.nextDouble())*0.01) ); // alpha multiplier   - must be > 1  
+		mutated.setEntry(2, Math.max(1e-6,     dna.getEntry(2)+(1-2*random.nextDouble())*0.1)  ); // lambda multiplier  - must be > 0 
+		mutated.setEntry(3, Math.max(1e-6,     dna.getEntry(3)+(1-2*random.nextDouble())*0.1)  ); // initial epsilon    - must be > 0
+		mutated.setEntry(4, Math.min(0.999999, dna.getEntry(4)+(1-2*random.nextDouble())*0.01) ); // epsilon multiplier - must be < 1
 		
 //		mutated.setEntry(0, dna.getEntry(0)); // FIXME
 //		mutated.setEntry(1, dna.getEntry(1)); // FIXME
@@ -108,33 +512,165 @@ public class HemmaTuner<TC extends TestCase> implements FitnessFunction<RealVect
 		return mutated;
 	}
 	
-	public void preloadFitnesses(RealVector[] population, int k)
+	private VectorGeneticSolver solver()
 	{
-		ThreadPool pool = ThreadPool.getInstance();
-		for (int i = 0; i < population.length; i++) 
-		{
-			final int _i = i;
-			pool.queueTask(() -> fitness(population[_i]));
-		}
-		pool.waitForAll();
+		VectorGeneticSolver solver = new VectorGeneticSolver(0.5, 0.5, 100, 1e-3);
+		solver.withDimension(5);
+		solver.withFitness(this);
+		solver.withRandom(random.split());
+		solver.withCreator(() -> create(solver.getRandom()));
+		solver.withMutator(dna -> mutate(dna, solver.getRandom()));
+		if(rungs > 0)
+			solver.withPopulationEvaluator(this::race);
+		return solver;
 	}
 	
 	public void solve()
 	{
-		VectorGeneticSolver solver = new VectorGeneticSolver(0.5, 0.5, 100, 1e-3);
-		solver.withDimension(5);
-		solver.withFitness(this);
-		solver.withCreator(this);
-		solver.withMutator(this);
+		VectorGeneticSolver solver = solver();
 		solver.withLogger(System.out);
-		solver.withIterationStartListener(this::preloadFitnesses);
-		solver.withIterationEndListener((population, k) -> 
-		{ 
-			preloadFitnesses(population, k); 
-			System.out.println("Iteration "+k+"ended"); 
-		} );
-		
-		RealVector solution = solver.solve(20);
+		solver.withParallelism(Runtime.getRuntime().availableProcessors());
+		solver.withIterationEndListener((population, fitness, k) -> System.out.println("Iteration "+k+"ended"));
+		
+		report(solver.solve(20));
+	}
+	
+	/**
+	 * Evolves a population of 10 on each island, migrating the two fittest 
+	 * around a ring every 5 generations.
+	 */
+	public void solveWithIslands(int islandCount)
+	{
+		IslandGeneticSolver<RealVector> solver = new IslandGeneticSolver<RealVector>(this::solver)
+				.withIslands(islandCount)
+				.withMigrationInterval(5)
+				.withMigrantCount(2)
+				.withTopology(Topology.Ring)
+				.withSeed(random.nextLong())
+				.withLogger(System.out);
+		
+		report(solver.solve(new RealVector[10*islandCount]));
+	}
+
+	/**
+	 * Keeps every core busy regardless of how long each simulation runs.
+	 */
+	public void solveSteadyState()
+	{
+		GeneticSolver<RealVector> solver = new SteadyStateGeneticSolver<>(solver()
+				.withParallelism(Runtime.getRuntime().availableProcessors())
+				.withLogger(System.out));
+		
+		report(solver.solve(new RealVector[20]));
+	}
+
+	/**
+	 * Fits a Gaussian process to the simulations run so far and runs a batch 
+	 * of one simulation per core at the points of greatest expected 
+	 * improvement. Fitness is log scaled so that diverging runs don't swamp 
+	 * the surrogate.
+	 * @param evaluations The total number of simulations.
+	 */
+	public void solveBayesian(int evaluations)
+	{
+		GeneticSolver<RealVector> solver = new BayesianOptimiser(LOWER, UPPER)
+				.withMaxEvaluations(evaluations)
+				.withFitness(dna -> -Math.log1p(convergence(dna, K)))
+				.withRandom(random.split())
+				.withParallelism(Runtime.getRuntime().availableProcessors())
+				.withLogger(System.out);
+		
+		report(solver.solve(new RealVector[11])); // 2*dimension+1 initial samples
+	}
+
+	/**
+	 * Adapts a search distribution around the default parameters, evaluating 
+	 * each generation in parallel.
+	 */
+	public void solveCMAES(int generations)
+	{
+		GeneticSolver<RealVector> solver = new CMAESSolver(LOWER, UPPER)
+				.withInitialStepSize(0.2)
+				.withFitness(this)
+				.withCreator(this)
+				.withStoppingCriteria((population, fitness, k) -> k >= generations)
+				.withRandom(random.split())
+				.withParallelism(Runtime.getRuntime().availableProcessors())
+				.withLogger(System.out);
+		
+		report(solver.solve(new RealVector[CMAESSolver.defaultPopulationSize(5)]));
+	}
+	
+	/**
+	 * Evolves a population of 20 by differential evolution, evaluating each 
+	 * generation in parallel.
+	 */
+	public void solveDifferentialEvolution(int generations)
+	{
+		GeneticSolver<RealVector> solver = new DifferentialEvolutionSolver(LOWER, UPPER)
+				.withFitness(this)
+				.withStoppingCriteria((population, fitness, k) -> k >= generations)
+				.withRandom(random.split())
+				.withParallelism(Runtime.getRuntime().availableProcessors())
+				.withLogger(System.out);
+		
+		report(solver.solve(new RealVector[20]));
+	}
+
+	/**
+	 * Trades convergence against message traffic and CPU time with NSGA-II 
+	 * and prints the Pareto front, from which e.g. a fast, low traffic 
+	 * configuration can be chosen for bandwidth limited links.
+	 * @return The Pareto front.
+	 */
+	public List<Individual<RealVector>> solveMultiObjective(int generations)
+	{
+		NSGA2Solver<RealVector> solver = new NSGA2Solver<>();
+		solver.withObjectives(dna ->
+				{
+					double[] measures = measure(dna, K);
+					return new double[]{ -measures[CONVERGENCE], -measures[MESSAGES], -measures[CPU_SECONDS] };
+				})
+			.withCreator(() -> create(solver.getRandom()))
+			.withGeneSplicer((father, mother) -> 
+				{
+					int n = solver.getRandom().nextInt(father.getDimension());
+					return father.getSubVector(0, n).append(mother.getSubVector(n, mother.getDimension()-n));
+				})
+			.withMutator(dna -> mutate(dna, solver.getRandom()))
+			.withMutationProbability(() -> solver.getRandom().nextDouble() < 0.5)
+			.withStoppingCriteria((population, fitness, k) -> k >= generations)
+			.withRandom(random.split())
+			.withParallelism(Runtime.getRuntime().availableProcessors())
+			.withLogger(System.out);
+		solver.solve(new RealVector[20]);
+		
+		List<Individual<RealVector>> front = solver.getParetoFront();
+		front.sort((a, b) -> Double.compare(b.objectives[0], a.objectives[0]));
+		System.out.println("convergence, messages, CPU seconds, parameters");
+		for (Individual<RealVector> individual : front)
+			System.out.println(-individual.objectives[0]+", "+(long)-individual.objectives[1]+", "+-individual.objectives[2]+", "+individual.dna);
+		return front;
+	}
+
+	/**
+	 * Prints the solution and records it in the parameter store, if any, 
+	 * for each scenario.
+	 */
+	private void report(RealVector solution)
+	{
+		if(parameterStore != null)
+		{
+			HemmaParameters parameters = HemmaParameters.of(solution.toArray());
+			convergence(solution, K);
+			for (Map.Entry<String, Supplier<? extends TestCase>> scenario : suite().entrySet())
+			{
+				double[] measures = cache.getValues(scenario.getKey(), K, solution);
+				if(measures != null)
+					parameterStore.put(TopologyFingerprint.of(scenario.getValue().get().init()), parameters, measures[CONVERGENCE]);
+			}
+		}
+		
 		System.out.println("initial alpha      = " + solution.getEntry(0));
 		System.out.println("alpha multiplier   = " + solution.getEntry(1));
 		System.out.println("lambda multiplier  = " + solution.getEntry(2));
@@ -145,6 +681,12 @@ public class HemmaTuner<TC extends TestCase> implements FitnessFunction<RealVect
 	public static void main(String[] args) 
 	{
 		TestCase.minimalLogging = true;
-		new HemmaTuner<TestCase002_8Bus>(TestCase002_8Bus.class, 10000).solve();
+		new HemmaTuner<TestCase002_8Bus>(TestCase002_8Bus.class, 10000)
+			.withCache(new FitnessCache(FitnessCache.DEFAULT_FILE))
+			.withParameterStore(ParameterStore.shared())
+			.withScenario("TestCase002_8Bus", TestCase002_8Bus::new)
+			.withGeneratedScenarios(20, 0, 1)
+			.withRacing(3, 3, 10.0)
+			.solveWithIslands(Math.max(2, Runtime.getRuntime().availableProcessors()));
 	}
 }
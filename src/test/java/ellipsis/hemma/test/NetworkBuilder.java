@@ -8,6 +8,7 @@ import java.util.Set;
 import ellipsis.hemma.Agent;
 import ellipsis.hemma.ConstantCurrentAgent;
 import ellipsis.hemma.ConstantPowerAgent;
+import ellipsis.hemma.ParameterStore;
 import ellipsis.hemma.VoltageControlledAgent;
 
 public class NetworkBuilder
@@ -30,10 +31,32 @@ public class NetworkBuilder
     
 	private HashMap<String, Agent> agents = new LinkedHashMap<>();
 	private Agent context;
+	private ParameterStore parameterStore = ParameterStore.shared();
 	
+	/**
+	 * Warm starts networks built from the parameters tuned for the most 
+	 * similar network in the store, by default the 
+	 * {@link ParameterStore#shared() shared} one.
+	 * @param store Provides the optimisation parameters of networks built; 
+	 * null leaves the agents' own defaults, for results that don't depend 
+	 * on the store's contents.
+	 */
+	public NetworkBuilder withParameterStore(ParameterStore store)
+	{
+		this.parameterStore = store;
+		return this;
+	}
+	
+	/**
+	 * @return The agents, with the optimisation parameters tuned for the 
+	 * most similar network in the parameter store, if any.
+	 */
 	public Set<Agent> agentSet()
 	{
-		return new LinkedHashSet<>(agents.values());
+		Set<Agent> agentSet = new LinkedHashSet<>(agents.values());
+		if(parameterStore != null)
+			parameterStore.apply(agentSet);
+		return agentSet;
 	}
 	
 	public Agent getAgent(String name)
@@ -0,0 +1,305 @@
+package ellipsis.hemma.test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import ellipsis.hemma.IAgent.AgentType;
+
+/**
+ * Generates synthetic networks for scaling studies. Networks are produced
+ * directly in {@link CompactNetwork} form so that sizes up to 10^6 buses can
+ * be generated without creating agents.
+ *
+ * All generated networks are connected with bus 0 a grounded VC agent. Loads
+ * are CP or CC agents and the VC agents' power limits are set to cover the
+ * total load with some headroom.
+ */
+public class NetworkGenerator
+{
+	public static enum Topology
+	{
+		Radial,
+		Mesh,
+		RingMain,
+		ScaleFree
+	}
+
+	// Load ranges (negative values are loads):
+	private static final double CP_POWER_MIN = -60.0;   // Watts
+	private static final double CP_POWER_MAX = -20.0;
+	private static final double CC_CURRENT_MIN = -6.0;  // Amps
+	private static final double CC_CURRENT_MAX = -2.0;
+	private static final double NOMINAL_VOLTAGE = 12.0;
+	private static final double SUPPLY_HEADROOM = 1.3;
+
+	private Random rand;
+	private double vcFraction = 0.125; // e.g. 1 in 8 as in TestCase002_8Bus
+	private double ccFraction = 1.0/3.0; // fraction of loads that are CC
+	private int scaleFreeLinks = 2;
+
+	// Line list under construction:
+	private int lineCount;
+	private int[] from, to;
+	private double[] length;
+
+	public NetworkGenerator(long seed)
+	{
+		this.rand = new Random(seed);
+	}
+
+	public NetworkGenerator withVCFraction(double fraction)
+	{
+		this.vcFraction = fraction;
+		return this;
+	}
+
+	public NetworkGenerator withCCFraction(double fraction)
+	{
+		this.ccFraction = fraction;
+		return this;
+	}
+
+	public NetworkGenerator withScaleFreeLinks(int links)
+	{
+		this.scaleFreeLinks = links;
+		return this;
+	}
+
+	public CompactNetwork generate(Topology topology, int busCount)
+	{
+		switch (topology)
+		{
+		case Radial:
+			return radial(busCount);
+		case Mesh:
+			return mesh(busCount);
+		case RingMain:
+			return ringMain(busCount);
+		case ScaleFree:
+			return scaleFree(busCount, scaleFreeLinks);
+		default:
+			throw new IllegalArgumentException("Unsupported topology: "+topology);
+		}
+	}
+
+
+	//// Topologies ////
+
+	/**
+	 * Radial feeders out of a substation at bus 0. Each bus usually continues
+	 * the current feeder and occasionally branches from a recent bus.
+	 */
+	public CompactNetwork radial(int busCount)
+	{
+		startLines(busCount-1);
+		for(int i = 1; i < busCount; ++i)
+		{
+			int parent;
+			if(i == 1 || rand.nextDouble() < 0.7)
+				parent = i-1;
+			else
+				parent = Math.max(0, i-2-rand.nextInt(10));
+			addLine(parent, i, uniform(1.0, 5.0));
+		}
+
+		return build(busCount, new int[]{0});
+	}
+
+	/**
+	 * 2-D grid filled row by row; the last row may be partial.
+	 */
+	public CompactNetwork mesh(int busCount)
+	{
+		int width = (int)Math.ceil(Math.sqrt(busCount));
+		startLines(2*busCount);
+		for(int i = 0; i < busCount; ++i)
+		{
+			if((i+1)%width != 0 && i+1 < busCount)
+				addLine(i, i+1, uniform(1.0, 3.0));
+			if(i+width < busCount)
+				addLine(i, i+width, uniform(1.0, 3.0));
+		}
+
+		return build(busCount, new int[]{0});
+	}
+
+	/**
+	 * A main ring of roughly sqrt(n) buses, with supplies spaced around the
+	 * ring and radial laterals hanging off each ring bus.
+	 */
+	public CompactNetwork ringMain(int busCount)
+	{
+		int ringSize = Math.min(busCount, Math.max(3, (int)Math.round(Math.sqrt(busCount))));
+		startLines(busCount);
+
+		// Ring:
+		for(int i = 0; i < ringSize; ++i)
+		{
+			int next = (i+1)%ringSize;
+			if(next != i && !(ringSize == 2 && i == 1))
+				addLine(i, next, uniform(5.0, 10.0));
+		}
+
+		// Laterals:
+		int[] lateralEnd = new int[ringSize];
+		for(int i = 0; i < ringSize; ++i)
+			lateralEnd[i] = i;
+		for(int i = ringSize; i < busCount; ++i)
+		{
+			int lateral = (i-ringSize)%ringSize;
+			addLine(lateralEnd[lateral], i, uniform(1.0, 5.0));
+			lateralEnd[lateral] = i;
+		}
+
+		// Supplies evenly around the ring:
+		int supplyCount = Math.max(1, Math.min(ringSize, (int)Math.round(vcFraction*busCount)));
+		int[] supplies = new int[supplyCount];
+		for(int i = 0; i < supplyCount; ++i)
+			supplies[i] = (int)((long)i*ringSize/supplyCount);
+
+		return build(busCount, supplies);
+	}
+
+	/**
+	 * Barabasi-Albert preferential attachment. The initial clique of
+	 * linksPerBus+1 buses are supplies since they become the hubs.
+	 */
+	public CompactNetwork scaleFree(int busCount, int linksPerBus)
+	{
+		int m = Math.max(1, Math.min(linksPerBus, busCount-1));
+		int seedSize = Math.min(busCount, m+1);
+		startLines(seedSize*seedSize/2 + m*busCount);
+
+		// Every line end, so that a uniform choice is proportional to degree:
+		int[] ends = new int[2*(seedSize*seedSize/2 + m*busCount)];
+		int endCount = 0;
+
+		for(int i = 0; i < seedSize; ++i)
+		{
+			for(int j = i+1; j < seedSize; ++j)
+			{
+				addLine(i, j, uniform(1.0, 10.0));
+				ends[endCount++] = i;
+				ends[endCount++] = j;
+			}
+		}
+
+		int[] targets = new int[m];
+		for(int i = seedSize; i < busCount; ++i)
+		{
+			int chosen = 0;
+			while(chosen < m)
+			{
+				int target = ends[rand.nextInt(endCount)];
+				if(!contains(targets, chosen, target))
+					targets[chosen++] = target;
+			}
+			for(int t = 0; t < m; ++t)
+			{
+				addLine(targets[t], i, uniform(1.0, 10.0));
+				ends[endCount++] = targets[t];
+				ends[endCount++] = i;
+			}
+		}
+
+		int[] supplies = new int[seedSize];
+		for(int i = 0; i < seedSize; ++i)
+			supplies[i] = i;
+		return build(busCount, supplies);
+	}
+
+
+	//// Construction ////
+
+	private void startLines(int capacity)
+	{
+		lineCount = 0;
+		from = new int[Math.max(1, capacity)];
+		to = new int[from.length];
+		length = new double[from.length];
+	}
+
+	private void addLine(int a, int b, double l)
+	{
+		if(lineCount == from.length)
+		{
+			int capacity = 2*from.length;
+			from = Arrays.copyOf(from, capacity);
+			to = Arrays.copyOf(to, capacity);
+			length = Arrays.copyOf(length, capacity);
+		}
+		from[lineCount] = a;
+		to[lineCount] = b;
+		length[lineCount] = l;
+		++lineCount;
+	}
+
+	/**
+	 * Places agents and sizes supplies.
+	 * @param supplies Buses that must be VC agents; the first is grounded.
+	 */
+	private CompactNetwork build(int busCount, int[] supplies)
+	{
+		AgentType[] types = new AgentType[busCount];
+		double[] parameters = new double[busCount];
+
+		for (int s : supplies)
+			types[s] = AgentType.VC;
+
+		// Random placement of the remaining agents:
+		double randomVCFraction = Math.max(0.0, vcFraction - (double)supplies.length/busCount);
+		int vcCount = supplies.length;
+		double totalLoad = 0.0;
+		for(int i = 0; i < busCount; ++i)
+		{
+			if(types[i] == AgentType.VC)
+				continue;
+
+			if(rand.nextDouble() < randomVCFraction)
+			{
+				types[i] = AgentType.VC;
+				++vcCount;
+			}
+			else if(rand.nextDouble() < ccFraction)
+			{
+				types[i] = AgentType.CC;
+				parameters[i] = uniform(CC_CURRENT_MIN, CC_CURRENT_MAX);
+				totalLoad -= parameters[i]*NOMINAL_VOLTAGE;
+			}
+			else
+			{
+				types[i] = AgentType.CP;
+				parameters[i] = uniform(CP_POWER_MIN, CP_POWER_MAX);
+				totalLoad -= parameters[i];
+			}
+		}
+
+		// Supply limits share the load with some headroom:
+		double share = SUPPLY_HEADROOM*Math.max(totalLoad, -CP_POWER_MIN)/vcCount;
+		for(int i = 0; i < busCount; ++i)
+		{
+			if(types[i] == AgentType.VC)
+				parameters[i] = share*uniform(0.8, 1.2);
+		}
+
+		CompactNetwork network = CompactNetwork.fromLines(types, parameters, supplies[0], from, to, length, lineCount);
+		from = to = null;
+		length = null;
+		return network;
+	}
+
+	private double uniform(double low, double high)
+	{
+		return low + rand.nextDouble()*(high-low);
+	}
+
+	private static boolean contains(int[] values, int count, int value)
+	{
+		for(int i = 0; i < count; ++i)
+		{
+			if(values[i] == value)
+				return true;
+		}
+		return false;
+	}
+}
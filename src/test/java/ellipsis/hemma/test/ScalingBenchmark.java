@@ -0,0 +1,493 @@
+package ellipsis.hemma.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import ellipsis.hemma.Agent;
+import ellipsis.hemma.HemmaParameters;
+import ellipsis.hemma.test.NetworkGenerator.Topology;
+import ellipsis.hemma.test.testcases.TestCase;
+import ellipsis.hemma.test.testcases.TestCase003_Generated;
+
+/**
+ * End to end benchmark of {@link TestCase#optimise(Set, int)} on generated
+ * networks of increasing size. Each run stops once the network has
+ * converged or after K iterations, and records the iterations taken, wall
+ * clock time, messages received by all agents, peak heap use (including
+ * garbage not yet collected) and bytes allocated per iteration. A small
+ * network is run first to warm up the JIT. Every run uses the same fixed
+ * optimisation parameters, by default {@link HemmaParameters#DEFAULT}, so
+ * that results don't depend on any parameter store; they are recorded with
+ * the results and only runs with the same parameters are compared.
+ *
+ * Results are written as CSV and compared with a baseline from an earlier
+ * run; a run is a regression if a time or memory measure exceeds the
+ * baseline by more than the time tolerance, if the iterations or messages
+ * exceed it by more than the count tolerance, or if it no longer converges.
+ *
+ * Allocation is counted for threads alive at the end of each run, so with
+ * shards the allocation of the worker threads is missed.
+ */
+public class ScalingBenchmark
+{
+	public static final File DEFAULT_RESULTS = new File("/opt/hemma/log/scaling.csv");
+	public static final File DEFAULT_BASELINE = new File("/opt/hemma/log/scaling-baseline.csv");
+
+	private static final String HEADER = "topology,busCount,seed,K,shards,iterations,converged,convergence,wallSeconds,messages,peakHeapBytes,allocatedBytesPerIteration,parameters";
+
+	/**
+	 * The measures of one run.
+	 */
+	public static class Result
+	{
+		public Topology topology;
+		public int busCount;
+		public long seed;
+		public int K;
+		public int shards;
+		public int iterations;
+		public boolean converged;
+		public double convergence;
+		public double wallSeconds;
+		public long messages;
+		public long peakHeapBytes;
+		public double allocatedBytesPerIteration;
+		public HemmaParameters parameters; // null if not recorded
+
+		/**
+		 * Identifies the runs to compare.
+		 */
+		public String key()
+		{
+			return topology+"-"+busCount+"-"+seed+"-"+K+"-"+shards+"-"+format(parameters);
+		}
+
+		public String toCSV()
+		{
+			return String.format(Locale.ROOT, "%s,%d,%d,%d,%d,%d,%b,%s,%.6f,%d,%d,%.1f,%s",
+					topology, busCount, seed, K, shards, iterations, converged, convergence,
+					wallSeconds, messages, peakHeapBytes, allocatedBytesPerIteration, format(parameters));
+		}
+
+		public static Result parse(String line)
+		{
+			String[] fields = line.split(",");
+			Result r = new Result();
+			r.topology = Topology.valueOf(fields[0]);
+			r.busCount = Integer.parseInt(fields[1]);
+			r.seed = Long.parseLong(fields[2]);
+			r.K = Integer.parseInt(fields[3]);
+			r.shards = Integer.parseInt(fields[4]);
+			r.iterations = Integer.parseInt(fields[5]);
+			r.converged = Boolean.parseBoolean(fields[6]);
+			r.convergence = Double.parseDouble(fields[7]);
+			r.wallSeconds = Double.parseDouble(fields[8]);
+			r.messages = Long.parseLong(fields[9]);
+			r.peakHeapBytes = Long.parseLong(fields[10]);
+			r.allocatedBytesPerIteration = Double.parseDouble(fields[11]);
+			if(fields.length > 12)
+				r.parameters = parseParameters(fields[12]);
+			return r;
+		}
+
+		/**
+		 * @return The parameters separated by semicolons.
+		 */
+		public static String format(HemmaParameters parameters)
+		{
+			if(parameters == null)
+				return "";
+			StringBuilder s = new StringBuilder();
+			for (double value : parameters.toArray())
+				s.append(s.length() > 0 ? ";" : "").append(value);
+			return s.toString();
+		}
+
+		public static HemmaParameters parseParameters(String s)
+		{
+			String[] fields = s.split(";");
+			double[] values = new double[fields.length];
+			for (int i = 0; i < fields.length; i++)
+				values[i] = Double.parseDouble(fields[i]);
+			return HemmaParameters.of(values);
+		}
+
+		@Override
+		public String toString()
+		{
+			return key()+": "+iterations+" iterations"+(converged ? "" : " (not converged)")+
+					String.format(Locale.ROOT, ", %.3fs, %d messages, %.1fMB peak heap, %.0fB/iteration",
+							wallSeconds, messages, peakHeapBytes/1e6, allocatedBytesPerIteration);
+		}
+	}
+
+	private List<Topology> topologies = Arrays.asList(Topology.Mesh, Topology.Radial);
+	private int[] busCounts = {8, 100, 1000, 10000, 100000};
+	private long seed = 0;
+	private int K = 2000;
+	private int shards = 1;
+	private HemmaParameters parameters = HemmaParameters.DEFAULT;
+	private double relativeTolerance = 1e-3;
+	private double timeTolerance = 0.2;
+	private double countTolerance = 0.05;
+
+	public ScalingBenchmark withTopologies(Topology... topologies)
+	{
+		this.topologies = Arrays.asList(topologies);
+		return this;
+	}
+
+	public ScalingBenchmark withBusCounts(int... busCounts)
+	{
+		this.busCounts = busCounts.clone();
+		return this;
+	}
+
+	public ScalingBenchmark withSeed(long seed)
+	{
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * @param K The maximum number of iterations of each run.
+	 */
+	public ScalingBenchmark withIterations(int K)
+	{
+		this.K = K;
+		return this;
+	}
+
+	public ScalingBenchmark withShards(int shards)
+	{
+		this.shards = shards;
+		return this;
+	}
+
+	/**
+	 * @param parameters The optimisation parameters of every run.
+	 */
+	public ScalingBenchmark withParameters(HemmaParameters parameters)
+	{
+		this.parameters = parameters;
+		return this;
+	}
+
+	/**
+	 * @see ConvergenceTracker#withRelativeTolerance(double)
+	 */
+	public ScalingBenchmark withRelativeTolerance(double relativeTolerance)
+	{
+		this.relativeTolerance = relativeTolerance;
+		return this;
+	}
+
+	/**
+	 * @param timeTolerance Fraction by which wall clock time, peak heap and allocation may exceed the baseline.
+	 * @param countTolerance Fraction by which iterations and messages may exceed the baseline.
+	 */
+	public ScalingBenchmark withTolerances(double timeTolerance, double countTolerance)
+	{
+		this.timeTolerance = timeTolerance;
+		this.countTolerance = countTolerance;
+		return this;
+	}
+
+	/**
+	 * Runs every topology at every size, printing each result as it completes.
+	 */
+	public List<Result> run()
+	{
+		TestCase.minimalLogging = true;
+		run(Topology.Mesh, 8); // warm up
+
+		List<Result> results = new ArrayList<>();
+		for (int busCount : busCounts)
+		{
+			for (Topology topology : topologies)
+			{
+				Result result = run(topology, busCount);
+				System.out.println(result);
+				results.add(result);
+			}
+		}
+		return results;
+	}
+
+	public Result run(Topology topology, int busCount)
+	{
+		TestCase003_Generated tc = new TestCase003_Generated(topology, busCount, seed)
+				.withParameters(parameters);
+		ConvergenceTracker tracker = new ConvergenceTracker(1.0, 10.0).withRelativeTolerance(relativeTolerance);
+		tc.withConvergenceTracker(tracker)
+		  .withShards(shards)
+		  .withSolutionFactory(k -> new StreamingSolution(k, k, new NullSink()));
+		Set<Agent> agents = tc.init();
+		agents.forEach(Agent::switchOn);
+
+		System.gc();
+		List<MemoryPoolMXBean> heap = new ArrayList<>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if(pool.getType() == MemoryType.HEAP)
+			{
+				pool.resetPeakUsage();
+				heap.add(pool);
+			}
+		}
+		Map<Long, Long> allocatedBefore = allocatedBytes();
+
+		long start = System.nanoTime();
+		Solution solution = tc.optimise(agents, K);
+		long end = System.nanoTime();
+
+		Map<Long, Long> allocatedAfter = allocatedBytes();
+		long allocated = 0;
+		for (Map.Entry<Long, Long> thread : allocatedAfter.entrySet())
+			allocated += thread.getValue() - allocatedBefore.getOrDefault(thread.getKey(), 0L);
+
+		Result r = new Result();
+		r.topology = topology;
+		r.busCount = busCount;
+		r.seed = seed;
+		r.K = K;
+		r.shards = shards;
+		r.parameters = parameters;
+		r.converged = tracker.converged();
+		r.iterations = r.converged ? tracker.getCheckpointK() : K;
+		r.convergence = solution.convergence(1.0, 10.0);
+		r.wallSeconds = (end - start)*1e-9;
+		for (Agent agent : agents)
+			r.messages += agent.getHemmaProtocol().getMessageCount();
+		for (MemoryPoolMXBean pool : heap)
+			r.peakHeapBytes += pool.getPeakUsage().getUsed();
+		r.allocatedBytesPerIteration = allocated/(double)Math.max(1, r.iterations);
+		return r;
+	}
+
+	/**
+	 * @return Bytes allocated so far by each live thread, or nothing if the JVM doesn't count them.
+	 */
+	private static Map<Long, Long> allocatedBytes()
+	{
+		Map<Long, Long> allocated = new HashMap<>();
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if(threads instanceof com.sun.management.ThreadMXBean)
+		{
+			com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean)threads;
+			if(sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled())
+			{
+				long[] ids = threads.getAllThreadIds();
+				long[] bytes = sunThreads.getThreadAllocatedBytes(ids);
+				for (int i = 0; i < ids.length; i++)
+				{
+					if(bytes[i] >= 0)
+						allocated.put(ids[i], bytes[i]);
+				}
+			}
+		}
+		return allocated;
+	}
+
+	/**
+	 * @return A description of each regression; empty if there are none.
+	 * Results with no baseline are not compared.
+	 * @see #unmatched(List, List)
+	 */
+	public List<String> compare(List<Result> results, List<Result> baseline)
+	{
+		Map<String, Result> baselineByKey = byKey(baseline);
+		List<String> regressions = new ArrayList<>();
+		for (Result r : results)
+		{
+			Result b = baselineByKey.get(r.key());
+			if(b == null)
+				continue;
+			if(b.converged && !r.converged)
+				regressions.add(r.key()+": no longer converges within "+r.K+" iterations");
+			check(regressions, r, "iterations", r.iterations, b.iterations, countTolerance);
+			check(regressions, r, "messages", r.messages, b.messages, countTolerance);
+			check(regressions, r, "wall clock seconds", r.wallSeconds, b.wallSeconds, timeTolerance);
+			check(regressions, r, "peak heap bytes", r.peakHeapBytes, b.peakHeapBytes, timeTolerance);
+			check(regressions, r, "bytes allocated per iteration", r.allocatedBytesPerIteration, b.allocatedBytesPerIteration, timeTolerance);
+		}
+		return regressions;
+	}
+
+	/**
+	 * @return The results with no baseline of the same key, e.g. because the 
+	 * sizes, K or parameters have changed, so are not compared.
+	 */
+	public static List<Result> unmatched(List<Result> results, List<Result> baseline)
+	{
+		Map<String, Result> baselineByKey = byKey(baseline);
+		List<Result> unmatched = new ArrayList<>();
+		for (Result r : results)
+		{
+			if(!baselineByKey.containsKey(r.key()))
+				unmatched.add(r);
+		}
+		return unmatched;
+	}
+
+	private static Map<String, Result> byKey(List<Result> results)
+	{
+		Map<String, Result> byKey = new HashMap<>();
+		for (Result r : results)
+			byKey.put(r.key(), r);
+		return byKey;
+	}
+
+	private static void check(List<String> regressions, Result r, String measure, double value, double baseline, double tolerance)
+	{
+		if(value > baseline*(1 + tolerance))
+			regressions.add(String.format(Locale.ROOT, "%s: %s %.4g exceeds baseline %.4g by %.1f%%",
+					r.key(), measure, value, baseline, 100*(value/baseline - 1)));
+	}
+
+	public static void write(List<Result> results, File file)
+	{
+		File parent = file.getAbsoluteFile().getParentFile();
+		if(parent != null)
+			parent.mkdirs();
+		try(PrintStream out = new PrintStream(file))
+		{
+			out.println(HEADER);
+			for (Result result : results)
+				out.println(result.toCSV());
+		}
+		catch (FileNotFoundException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	public static List<Result> read(File file)
+	{
+		List<Result> results = new ArrayList<>();
+		try(BufferedReader reader = new BufferedReader(new FileReader(file)))
+		{
+			String line;
+			while((line = reader.readLine()) != null)
+			{
+				if(!line.isEmpty() && !line.startsWith("topology,")) // header, possibly of an earlier version
+					results.add(Result.parse(line));
+			}
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		return results;
+	}
+
+	private static class NullSink implements DataPointSink
+	{
+		@Override
+		public void open(List<String> agentNames) {}
+
+		@Override
+		public void write(int k, DataPoint point) {}
+
+		@Override
+		public void close() {}
+	}
+
+	/**
+	 * Arguments are name=value pairs:
+	 * <pre>
+	 * sizes=8,100,1000,10000,100000  bus counts
+	 * topologies=Mesh,Radial
+	 * K=2000                         maximum iterations of each run
+	 * seed=0
+	 * shards=1
+	 * parameters=0.08;1.02;0.18;0.11;0.991  alpha, alpha multiplier, lambda multiplier, epsilon, epsilon multiplier
+	 * relativeTolerance=0.001        change in convergence score per checkpoint judged converged
+	 * out=/opt/hemma/log/scaling.csv
+	 * baseline=/opt/hemma/log/scaling-baseline.csv
+	 * timeTolerance=0.2
+	 * countTolerance=0.05
+	 * updateBaseline=false           replace the baseline with the results
+	 * </pre>
+	 * If the baseline doesn't exist the results become the baseline. Results
+	 * with no baseline are listed. Exits with status 1 if there are
+	 * regressions, or 2 if no result had a baseline to be compared with.
+	 */
+	public static void main(String[] args)
+	{
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args)
+		{
+			int split = arg.indexOf('=');
+			if(split < 0)
+				throw new IllegalArgumentException("Expected name=value but found "+arg);
+			options.put(arg.substring(0, split), arg.substring(split+1));
+		}
+
+		ScalingBenchmark benchmark = new ScalingBenchmark()
+				.withSeed(Long.parseLong(options.getOrDefault("seed", "0")))
+				.withIterations(Integer.parseInt(options.getOrDefault("K", "2000")))
+				.withShards(Integer.parseInt(options.getOrDefault("shards", "1")))
+				.withParameters(options.containsKey("parameters") ? 
+						Result.parseParameters(options.get("parameters")) : HemmaParameters.DEFAULT)
+				.withRelativeTolerance(Double.parseDouble(options.getOrDefault("relativeTolerance", "0.001")))
+				.withTolerances(
+						Double.parseDouble(options.getOrDefault("timeTolerance", "0.2")),
+						Double.parseDouble(options.getOrDefault("countTolerance", "0.05")));
+		if(options.containsKey("sizes"))
+			benchmark.withBusCounts(Arrays.stream(options.get("sizes").split(",")).mapToInt(Integer::parseInt).toArray());
+		if(options.containsKey("topologies"))
+			benchmark.withTopologies(Arrays.stream(options.get("topologies").split(",")).map(Topology::valueOf).toArray(Topology[]::new));
+		File out = new File(options.getOrDefault("out", DEFAULT_RESULTS.getPath()));
+		File baselineFile = new File(options.getOrDefault("baseline", DEFAULT_BASELINE.getPath()));
+
+		List<Result> results = benchmark.run();
+		write(results, out);
+		System.out.println("Results written to "+out);
+
+		if(!baselineFile.exists() || Boolean.parseBoolean(options.getOrDefault("updateBaseline", "false")))
+		{
+			write(results, baselineFile);
+			System.out.println("Baseline written to "+baselineFile);
+			return;
+		}
+
+		List<Result> baseline = read(baselineFile);
+		List<Result> unmatched = unmatched(results, baseline);
+		if(!unmatched.isEmpty())
+		{
+			System.out.println("No baseline in "+baselineFile+" for:");
+			unmatched.forEach(r -> System.out.println("  "+r.key()));
+		}
+		if(unmatched.size() == results.size())
+		{
+			System.out.println("Nothing compared with "+baselineFile+"; take a new baseline with updateBaseline=true");
+			System.exit(2);
+		}
+
+		List<String> regressions = benchmark.compare(results, baseline);
+		if(regressions.isEmpty())
+		{
+			System.out.println("No regressions against "+baselineFile);
+			return;
+		}
+		System.out.println("Regressions against "+baselineFile+":");
+		regressions.forEach(System.out::println);
+		System.exit(1);
+	}
+}
@@ -1,9 +1,7 @@
 package ellipsis.hemma.test;
 
 import static ellipsis.common.math.Sum.sum;
-import static ellipsis.common.math.VectorHelper.appendVectors;
 import static ellipsis.common.math.VectorHelper.map;
-import static ellipsis.common.math.VectorHelper.vector;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -14,7 +12,6 @@ import java.util.Set;
 import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.RealVector;
 
-import ellipsis.common.math.VectorHelper;
 import ellipsis.hemma.Agent;
 
 public class Solution
@@ -48,35 +45,38 @@ public class Solution
 
 	public void storeDataPoint(Set<Agent> agents)
 	{
-		RealVector x = appendVectors(agents, n -> vector(n.getV(), n.getvMinus(), n.getPower()));
-		xs.add(x);
-		lagrangeValues.add(lagrange(agents));
-		costValues.add(cost(agents));
-//		gradientValues.add(appendVectors(agents, n -> VectorHelper.abs(n.gradient()/*.mapDivide(n.getAlpha())*/)));
-		gradientValues.add(appendVectors(agents, n -> VectorHelper.abs(n.gradientNoAug()/*.mapDivide(n.getAlpha())*/)));
-		RealVector g = appendVectors(agents, n -> vector(n.gPlus(), n.gMinus()));
-		gValues.add(g);
-		epsilonValues.add(vector(agents, Agent::getEpsilon));
-		alphaValues.add(agents.iterator().next().getAlpha());
-		lambdaValues.add(appendVectors(agents, n -> vector(n.getLambdaPlus(), n.getLambdaMinus())));
-		hValues.add(vector(agents, Agent::getAverageConvergenceApproximation));
-		hValuesCorrection.add(vector(agents, Agent::getAverageConvergenceCorrection));
-		trueH.add(sum(Agent::getPreviousConvergenceMeasure, agents)/agents.size());
+		DataPoint p = dataPoint(agents);
+		xs.add(p.x);
+		lagrangeValues.add(p.lagrange);
+		costValues.add(p.cost);
+		gradientValues.add(p.gradient);
+		gValues.add(p.g);
+		epsilonValues.add(p.epsilon);
+		alphaValues.add(p.alpha);
+		lambdaValues.add(p.lambda);
+		hValues.add(p.h);
+		hValuesCorrection.add(p.hCorrection);
+		trueH.add(p.trueH);
+	}
+	
+	/**
+	 * Called once the optimisation has finished with the final state of the agents.
+	 */
+	public void finish(Set<Agent> agents)
+	{
+	}
+	
+	/**
+	 * @return The values to record for the current state of the agents.
+	 */
+	public DataPoint dataPoint(Set<Agent> agents)
+	{
+		return GlobalMetrics.dataPoint(agents);
 	}
 	
 	public Double lagrange(Set<Agent> agents)
 	{
-		double cost = cost(agents);
-		double lambdaPlusG = lambdaPlusG(agents);
-		double lambdaMinusG = lambdaMinusG(agents);
-		double alphaGPlus = alphaGPlus(agents);
-		double alphaGMinus = alphaGMinus(agents);
-		return 
-			cost + 
-			lambdaPlusG +
-			lambdaMinusG +
-			alphaGPlus +
-			alphaGMinus;
+		return GlobalMetrics.lagrange(agents);
 	}
 
 	public double alphaGMinus(Set<Agent> agents)
@@ -216,10 +216,26 @@ public class Solution
 	{
 		int K = size();
 		int lastIndex = K-1;
-		
+		return convergence(
+				xs.get((int)(K*0.8)), 
+				xs.get(lastIndex), 
+				gradientValues.get(lastIndex).getNorm(), 
+				alphaValues.get(lastIndex), 
+				gValues.get(lastIndex).getNorm(), 
+				baseVoltage, basePower);
+	}
+	
+	/**
+	 * @param _80State The state 80% of the way through the iterations.
+	 * @param finalState The final state.
+	 * @param finalGradientNorm Norm of the final gradient.
+	 * @param finalAlpha The final penalty multiplier.
+	 * @param finalG Norm of the final g(x) values.
+	 * @see #convergence(double, double)
+	 */
+	protected static double convergence(RealVector _80State, RealVector finalState, double finalGradientNorm, double finalAlpha, double finalG, double baseVoltage, double basePower)
+	{
 		// Distance from final state at 80% through iterations:
-		RealVector finalState = xs.get(lastIndex);
-		RealVector _80State = xs.get((int)(K*0.8));
 		double 	stateConvergence = map( // scale according to base voltage and power
 					_80State.subtract(finalState), 
 					(int i, double d) -> {switch(i%3)
@@ -235,10 +251,9 @@ public class Solution
 				.getNorm();
 		
 		// Gradient norm:
-		double finalGradNorm = gradientValues.get(lastIndex).getNorm()/alphaValues.get(lastIndex);
+		double finalGradNorm = finalGradientNorm/finalAlpha;
 		
 		// g(x) values:
-		double finalG = gValues.get(lastIndex).getNorm();
 		if(Double.isNaN(finalG) || Double.isNaN(finalGradNorm) || Double.isNaN(stateConvergence))
 			return Double.MAX_VALUE;
 		return new ArrayRealVector(new double[]{stateConvergence, finalGradNorm, finalG}).getNorm();
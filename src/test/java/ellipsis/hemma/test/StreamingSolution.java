@@ -0,0 +1,150 @@
+package ellipsis.hemma.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealVector;
+
+import ellipsis.hemma.Agent;
+
+/**
+ * A {@link Solution} that writes data points to a sink as they are recorded
+ * rather than keeping them. Only the state needed by
+ * {@link #convergence(double, double)} is kept, so memory use does not grow
+ * with the number of iterations. If the run stops before K iterations the 
+ * 80% state is approximated by the nearest of a few retained states.
+ */
+public class StreamingSolution extends Solution
+{
+	private DataPointSink sink;
+	private int stride;
+	private int _80Index;
+	private int count = 0;
+
+	// Convergence window:
+	private double[] _80State;
+	private double[] lastState;
+	
+	// States at every snapshotInterval'th data point for runs that stop early:
+	private static final int MAX_SNAPSHOTS = 8;
+	private List<double[]> snapshots = new ArrayList<>();
+	private int snapshotInterval = 1;
+	private double finalGradientNorm, finalAlpha, finalG;
+	private boolean finished = false;
+
+	/**
+	 * Writes every stride'th data point as CSV to the data file.
+	 * @param K The number of iterations that will be run.
+	 */
+	public StreamingSolution(int K, int stride)
+	{
+		this(K, stride, new CSVSink(out));
+	}
+
+	/**
+	 * @param K The number of iterations that will be run.
+	 * @param stride Data points are written to the sink every stride'th iteration and for the final state.
+	 * @param sink
+	 */
+	public StreamingSolution(int K, int stride, DataPointSink sink)
+	{
+		this.sink = sink;
+		this.stride = Math.max(1, stride);
+		this._80Index = (int)((K+1)*0.8); // K+1 data points including the starting state
+	}
+
+	@Override
+	public void storeDataPoint(Set<Agent> agents)
+	{
+		int k = count++;
+
+		if(k == 0)
+		{
+			List<String> names = new ArrayList<>(agents.size());
+			for (Agent agent : agents)
+				names.add(agent.getName());
+			sink.open(names);
+		}
+		if(k%stride == 0)
+			sink.write(k, dataPoint(agents));
+
+		// State for the convergence measure:
+		if(lastState == null)
+			lastState = new double[3*agents.size()];
+		state(agents, lastState);
+		if(k == _80Index)
+			_80State = lastState.clone();
+		else if(_80State == null && k%snapshotInterval == 0)
+			snapshot(k);
+	}
+	
+	private void snapshot(int k)
+	{
+		if(snapshots.size() == MAX_SNAPSHOTS)
+		{
+			// Keep every second snapshot:
+			for (int i = 0; i < MAX_SNAPSHOTS/2; i++)
+				snapshots.set(i, snapshots.get(2*i));
+			snapshots.subList(MAX_SNAPSHOTS/2, MAX_SNAPSHOTS).clear();
+			snapshotInterval *= 2;
+			if(k%snapshotInterval != 0)
+				return;
+		}
+		snapshots.add(lastState.clone());
+	}
+
+	@Override
+	public void finish(Set<Agent> agents)
+	{
+		DataPoint p = dataPoint(agents);
+		if((count-1)%stride != 0)
+			sink.write(count-1, p);
+		sink.close();
+
+		finalGradientNorm = p.gradient.getNorm();
+		finalAlpha = p.alpha;
+		finalG = p.g.getNorm();
+		if(_80State == null) // stopped early so use the nearest snapshot at or before 80% 
+			_80State = snapshots.get(Math.min(snapshots.size()-1, (int)(count*0.8)/snapshotInterval));
+		snapshots = null;
+		finished = true;
+	}
+
+	private static void state(Set<Agent> agents, double[] state)
+	{
+		int i = 0;
+		for (Agent agent : agents)
+		{
+			state[i++] = agent.getV();
+			state[i++] = agent.getvMinus();
+			state[i++] = agent.getPower();
+		}
+	}
+
+	@Override
+	public int size()
+	{
+		return count;
+	}
+
+	/**
+	 * Data points have already been written to the sink.
+	 */
+	@Override
+	public void printCSV(int lineCount, int gDimension)
+	{
+	}
+
+	@Override
+	public double convergence(double baseVoltage, double basePower)
+	{
+		if(!finished)
+			throw new IllegalStateException("Convergence is only available once the run has finished.");
+
+		RealVector _80 = new ArrayRealVector(_80State, false);
+		RealVector last = new ArrayRealVector(lastState, false);
+		return convergence(_80, last, finalGradientNorm, finalAlpha, finalG, baseVoltage, basePower);
+	}
+}
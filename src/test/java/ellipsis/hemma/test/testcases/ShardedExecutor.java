@@ -0,0 +1,352 @@
+package ellipsis.hemma.test.testcases;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Phaser;
+
+import ellipsis.hemma.Agent;
+import ellipsis.hemma.HEMMAProtocol;
+import ellipsis.hemma.HEMMAProtocol.HEMMAMessage;
+import ellipsis.hemma.IAgent;
+import ellipsis.hemma.test.GraphPartitioner;
+import ellipsis.hemma.test.GraphPartitioner.Partition;
+import ellipsis.hemma.test.Solution;
+
+/**
+ * Executes a test case's iterations with the network partitioned across
+ * worker threads. Each worker owns one partition and runs
+ * {@link TestCase#executeIterationForAgent} for its agents. Variable updates
+ * between agents in the same partition are synchronous as usual; updates
+ * across partitions are batched in per-worker mailboxes and exchanged after
+ * all workers have finished their agents, with the responses returned in a
+ * second exchange.
+ *
+ * An agent's step reads the live state of agents up to two lines away (the 
+ * line search sets trial states on the agent itself), so agents within two 
+ * lines of another partition (the halo) cannot step at the same time as the 
+ * agents they reach. Interior agents are executed by all workers at once, 
+ * then the halos are executed with partitions grouped by colour so that 
+ * partitions whose halos reach each other never execute together.
+ *
+ * Each iteration runs as:
+ *   1. Workers execute their interior agents.
+ *   2. Workers execute their halo agents, one colour at a time.
+ *   3. Workers deliver the VU requests addressed to their agents.
+ *   4. Workers deliver VU responses and process their agents' messages.
+ *   5. The calling thread stores the data point.
+ */
+public class ShardedExecutor
+{
+	/**
+	 * Batched messages from one worker to another.
+	 */
+	private static class Mailbox
+	{
+		List<HEMMAMessage> messages = new ArrayList<>();
+		List<HEMMAProtocol> destinations = new ArrayList<>();
+
+		void send(HEMMAMessage message, HEMMAProtocol destination)
+		{
+			messages.add(message);
+			destinations.add(destination);
+		}
+
+		void clear()
+		{
+			messages.clear();
+			destinations.clear();
+		}
+	}
+
+	private final TestCase testCase;
+	private final Set<Agent> agents;
+	private final Partition partition;
+	private final List<List<Agent>> shards = new ArrayList<>();
+	private final List<List<Agent>> interiors = new ArrayList<>();
+	private final List<List<Agent>> halos = new ArrayList<>();
+	private final int[] colours;
+	private final int colourCount;
+	private final Mailbox[][] requests;  // [source][destination]
+	private final Mailbox[][] responses; // [source][destination]
+	private final long[] busyTime;
+	private final long[] crossMessages;
+
+	private final Phaser control; // start and end of each iteration, shared with the calling thread
+	private final Phaser phase;   // between worker phases
+	private final List<Thread> workers = new ArrayList<>();
+	private volatile boolean stopped = false;
+	private volatile Throwable failure;
+
+	// Published to workers by the start of each iteration:
+	private Solution sol;
+	private int k;
+
+	public ShardedExecutor(TestCase testCase, Set<Agent> agents, int shardCount)
+	{
+		this.testCase = testCase;
+		this.agents = agents;
+
+		// Partition the network graph:
+		List<Agent> list = new ArrayList<>(agents);
+		Map<Agent, Integer> index = new IdentityHashMap<>();
+		for (int i = 0; i < list.size(); i++)
+			index.put(list.get(i), i);
+
+		int[] offsets = new int[list.size()+1];
+		for (int i = 0; i < list.size(); i++)
+			offsets[i+1] = offsets[i] + list.get(i).neighbourCount();
+		int[] neighbours = new int[offsets[list.size()]];
+		for (int i = 0; i < list.size(); i++)
+		{
+			int j = offsets[i];
+			for (IAgent n : list.get(i).neighbours())
+				neighbours[j++] = index.get(n);
+		}
+
+		partition = new GraphPartitioner().partition(offsets, neighbours, shardCount);
+		shardCount = partition.partCount();
+		int[] parts = partition.parts();
+		for (int p = 0; p < shardCount; p++)
+		{
+			shards.add(new ArrayList<>());
+			interiors.add(new ArrayList<>());
+			halos.add(new ArrayList<>());
+		}
+		
+		// Halos and the partitions they reach:
+		boolean[][] reaches = new boolean[shardCount][shardCount];
+		for (int i = 0; i < list.size(); i++)
+		{
+			boolean halo = false;
+			for (int j = offsets[i]; j < offsets[i+1]; j++)
+			{
+				int n = neighbours[j];
+				for (int l = offsets[n]; l < offsets[n+1]; l++)
+				{
+					int q = parts[neighbours[l]];
+					if(q != parts[i])
+					{
+						halo = true;
+						reaches[parts[i]][q] = true;
+					}
+				}
+				if(parts[n] != parts[i])
+				{
+					halo = true;
+					reaches[parts[i]][parts[n]] = true;
+				}
+			}
+			
+			shards.get(parts[i]).add(list.get(i));
+			(halo ? halos : interiors).get(parts[i]).add(list.get(i));
+		}
+		
+		// Greedy colouring of the partitions:
+		colours = new int[shardCount];
+		int maxColour = 0;
+		for (int p = 0; p < shardCount; p++)
+		{
+			int c = 0;
+			boolean clash = true;
+			while(clash)
+			{
+				clash = false;
+				for (int q = 0; q < p; q++)
+				{
+					if(colours[q] == c && (reaches[p][q] || reaches[q][p]))
+					{
+						clash = true;
+						++c;
+						break;
+					}
+				}
+			}
+			colours[p] = c;
+			maxColour = Math.max(maxColour, c);
+		}
+		colourCount = maxColour+1;
+
+		// Route boundary variable updates through mailboxes:
+		requests = new Mailbox[shardCount][shardCount];
+		responses = new Mailbox[shardCount][shardCount];
+		for (int a = 0; a < shardCount; a++)
+		{
+			for (int b = 0; b < shardCount; b++)
+			{
+				requests[a][b] = new Mailbox();
+				responses[a][b] = new Mailbox();
+			}
+		}
+		for (int i = 0; i < list.size(); i++)
+		{
+			for (IAgent n : list.get(i).neighbours())
+			{
+				int source = parts[i];
+				int destination = parts[index.get(n)];
+				if(source != destination)
+					list.get(i).getHemmaProtocol().setRemoteChannel(n.getHemmaProtocol(), requests[source][destination]::send);
+			}
+		}
+
+		busyTime = new long[shardCount];
+		crossMessages = new long[shardCount];
+
+		// Workers:
+		control = new Phaser(shardCount+1);
+		phase = new Phaser(shardCount);
+		for (int p = 0; p < shardCount; p++)
+		{
+			final int shard = p;
+			Thread worker = new Thread(() -> work(shard), "hemma-shard-"+p);
+			worker.setDaemon(true);
+			workers.add(worker);
+			worker.start();
+		}
+	}
+
+	/**
+	 * Executes one iteration on all workers and stores the data point.
+	 */
+	public void executeIteration(Solution sol, int k)
+	{
+		this.sol = sol;
+		this.k = k;
+		await(); // start
+		await(); // end
+		sol.storeDataPoint(agents);
+	}
+
+	public void shutdown()
+	{
+		if(stopped)
+			return;
+		stopped = true;
+		control.forceTermination();
+		phase.forceTermination();
+		for (Thread worker : workers)
+		{
+			try { worker.join(); }
+			catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+		}
+
+		// Revert to direct variable updates:
+		for (Agent agent : agents)
+			for (IAgent n : agent.neighbours())
+				agent.getHemmaProtocol().setRemoteChannel(n.getHemmaProtocol(), null);
+	}
+
+	public Partition getPartition()
+	{
+		return partition;
+	}
+
+	/**
+	 * @return Partition sizes, cut and the time each worker spent executing agents.
+	 */
+	public String report()
+	{
+		StringBuilder report = new StringBuilder("Sharded execution: ").append(partition).append(", halo colours=").append(colourCount);
+		long maxBusy = 0, totalBusy = 0;
+		for (int p = 0; p < busyTime.length; p++)
+		{
+			maxBusy = Math.max(maxBusy, busyTime[p]);
+			totalBusy += busyTime[p];
+		}
+		for (int p = 0; p < busyTime.length; p++)
+		{
+			report.append("\n  shard ").append(p)
+				.append(": agents=").append(partition.size(p))
+				.append(", halo=").append(halos.get(p).size())
+				.append(", colour=").append(colours[p])
+				.append(", busy=").append(busyTime[p]/1000000).append("ms")
+				.append(", cross-shard VU=").append(crossMessages[p]);
+		}
+		if(totalBusy > 0)
+			report.append("\n  time imbalance=").append(maxBusy*(double)busyTime.length/totalBusy);
+		return report.toString();
+	}
+
+
+	//// Workers ////
+
+	private void work(int shard)
+	{
+		List<Agent> own = shards.get(shard);
+		int shardCount = shards.size();
+		try
+		{
+			while(true)
+			{
+				if(control.arriveAndAwaitAdvance() < 0 || stopped)
+					return;
+
+				// 1. Execute interior agents:
+				long t = System.nanoTime();
+				for (Agent agent : interiors.get(shard))
+					testCase.executeIterationForAgent(agents, agent, sol, k);
+				busyTime[shard] += System.nanoTime() - t;
+				if(phase.arriveAndAwaitAdvance() < 0)
+					return;
+				
+				// 2. Execute halo agents when it is this partition's colour's turn:
+				for (int c = 0; c < colourCount; c++)
+				{
+					if(colours[shard] == c)
+					{
+						t = System.nanoTime();
+						for (Agent agent : halos.get(shard))
+							testCase.executeIterationForAgent(agents, agent, sol, k);
+						busyTime[shard] += System.nanoTime() - t;
+					}
+					if(phase.arriveAndAwaitAdvance() < 0)
+						return;
+				}
+
+				// 3. Deliver requests and return responses to their sources:
+				for (int source = 0; source < shardCount; source++)
+				{
+					Mailbox in = requests[source][shard];
+					for (int i = 0; i < in.messages.size(); i++)
+					{
+						HEMMAMessage request = in.messages.get(i);
+						HEMMAMessage response = in.destinations.get(i).deliver(request);
+						responses[shard][source].send(response, request.getSource());
+					}
+					crossMessages[shard] += in.messages.size();
+					in.clear();
+				}
+				if(phase.arriveAndAwaitAdvance() < 0)
+					return;
+
+				// 4. Deliver responses then process messages:
+				for (int source = 0; source < shardCount; source++)
+				{
+					Mailbox in = responses[source][shard];
+					for (int i = 0; i < in.messages.size(); i++)
+						in.destinations.get(i).deliver(in.messages.get(i));
+					in.clear();
+				}
+				for (Agent agent : own)
+					agent.getHemmaProtocol().execute(k);
+
+				control.arriveAndAwaitAdvance();
+			}
+		}
+		catch (Throwable e)
+		{
+			// Release the other workers and the calling thread:
+			failure = e;
+			control.forceTermination();
+			phase.forceTermination();
+		}
+	}
+
+	private void await()
+	{
+		if(control.arriveAndAwaitAdvance() < 0)
+			throw new RuntimeException("Sharded execution failed", failure);
+	}
+}
@@ -5,18 +5,28 @@ import static ellipsis.common.math.VectorHelper.vector;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintStream;
+import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.function.IntFunction;
 
 import org.apache.commons.math3.linear.RealVector;
 
 import ellipsis.hemma.Agent;
+import ellipsis.hemma.EvaluationContext;
 import ellipsis.hemma.HEMMAProtocol;
+import ellipsis.hemma.IAgent;
+import ellipsis.hemma.PhaseTimers;
+import ellipsis.hemma.PhaseTimers.Phase;
+import ellipsis.hemma.test.CompressedSolution;
+import ellipsis.hemma.test.ConvergenceTracker;
 import ellipsis.hemma.test.Solution;
+import ellipsis.hemma.test.StreamingSolution;
+import ellipsis.hemma.test.trace.TraceWriter;
 
 public abstract class TestCase
 {
 	public static boolean minimalLogging = false;
-	private static final PrintStream log;
+	static final PrintStream log;
 	static
 	{
 		try
@@ -31,6 +41,51 @@ public abstract class TestCase
 		}
 	}
 	
+	private int shardCount = 1;
+	private IntFunction<Solution> solutionFactory;
+	private ConvergenceTracker convergenceTracker;
+	
+	/**
+	 * Execute agents on the given number of worker threads, each owning a 
+	 * partition of the network (see {@link ShardedExecutor}).
+	 */
+	public TestCase withShards(int shardCount)
+	{
+		this.shardCount = shardCount;
+		return this;
+	}
+	
+	/**
+	 * Sets how data points are recorded, e.g. 
+	 * <code>K -> new StreamingSolution(K, 100)</code> for long runs.
+	 * By default {@link #run(int)} writes every data point to 
+	 * {@link TraceWriter#DEFAULT_FILE} and {@link #optimise(Set, int)} keeps 
+	 * them in memory in a {@link CompressedSolution}.
+	 * @param factory Creates the solution for a run of K iterations.
+	 */
+	public TestCase withSolutionFactory(IntFunction<Solution> factory)
+	{
+		this.solutionFactory = factory;
+		return this;
+	}
+	
+	/**
+	 * Stops runs early once the tracker reports convergence or aborts the run.
+	 */
+	public TestCase withConvergenceTracker(ConvergenceTracker tracker)
+	{
+		this.convergenceTracker = tracker;
+		return this;
+	}
+	
+	/**
+	 * @return The tracker used for the latest run or null if none was set.
+	 */
+	public ConvergenceTracker getConvergenceTracker()
+	{
+		return convergenceTracker;
+	}
+	
 	/**
 	 * Initialises and executes the optimisation algorithm.
 	 * @param K Number of iterations.
@@ -40,9 +95,12 @@ public abstract class TestCase
 		log.println("\nBeginning simulation with K="+K);
 		Set<Agent> agents = init();
 		agents.forEach(Agent::switchOn);
-		Solution solution = optimise(agents, K);
-		HEMMAProtocol.useCache = false;
+		Solution solution = optimise(agents, K, solutionFactory != null ? 
+				solutionFactory.apply(K) : 
+				new StreamingSolution(K, 1, new TraceWriter(TraceWriter.DEFAULT_FILE)));
 		solution.printCSV(1000, agents.size()*2);
+		if(PhaseTimers.ENABLED)
+			log.println(PhaseTimers.report(agents));
 	}
 
 	public abstract Set<Agent> init();
@@ -59,26 +117,63 @@ public abstract class TestCase
 	 * @return
 	 */
 	public Solution optimise(Set<Agent> agents, int K)
+	{
+		return optimise(agents, K, solutionFactory != null ? solutionFactory.apply(K) : new CompressedSolution());
+	}
+	
+	/**
+	 * @param sol Stores the important values from each iteration for logging.
+	 */
+	protected Solution optimise(Set<Agent> agents, int K, Solution sol)
 	{
 		// Init:
-		Solution sol = new Solution(); // This stores the important values from each iteration for logging.
+		EvaluationContext.of(agents); // the network's agents share one context
 		agents.forEach(Agent::project); // Project the state of each agent to ensure that we start from a feasible solution.
 		sol.storeDataPoint(agents); // Store the starting values for logging.
+		if(convergenceTracker != null)
+		{
+			convergenceTracker.reset();
+			convergenceTracker.update(agents, 0);
+		}
 		
-		for(int k = 0; k < K; ++k)
+		ShardedExecutor shards = shardCount > 1 ? new ShardedExecutor(this, agents, shardCount) : null;
+		try
+		{
+			for(int k = 0; k < K; ++k)
+			{
+				if(!minimalLogging) 
+					log.print(".");
+				if(k % 1000 == 0)
+				{
+					log.print(k);
+					if(minimalLogging)
+						log.print(",");
+				}
+				
+				if(shards != null)
+					shards.executeIteration(sol, k);
+				else
+					executeIteration(agents, sol, k);
+				
+				if(convergenceTracker != null && convergenceTracker.update(agents, k+1))
+				{
+					log.println();
+					log.println((convergenceTracker.aborted() ? "Aborted" : "Converged")+" at k="+(k+1)+" with score "+convergenceTracker.getScore());
+					break;
+				}
+			}
+		}
+		finally
 		{
-			if(!minimalLogging) 
-				log.print(".");
-			if(k % 1000 == 0)
+			if(shards != null)
 			{
-				log.print(k);
-				if(minimalLogging)
-					log.print(",");
+				shards.shutdown();
+				log.println();
+				log.println(shards.report());
 			}
-			
-			executeIteration(agents, sol, k);
 		}
 		
+		sol.finish(agents);
 		log.println("Simulation complete.");
 		return sol;
 	}
@@ -114,6 +209,9 @@ public abstract class TestCase
 			return;
 		
 		RealVector previousState = agent.state();
+		Set<Agent> neighbourhood = neighbourhood(agent);
+		PhaseTimers timers = agent.getHemmaProtocol().getTimers();
+		long start;
 		
 		/*
 		 * Stochastic gradient decent until Lagrange gradient is less than epsilon,
@@ -125,7 +223,9 @@ public abstract class TestCase
 		int maxGradDecIterations = 100;
 		for(int i = 0; i < 3; ++i) // one dimension at a time - this is much faster due to a steep, curved Lagrange function 
 		{
+			start = PhaseTimers.start(timers, Phase.Gradient);
 			RealVector grad = grad(agent, i);
+			PhaseTimers.stop(timers, Phase.Gradient, start);
 			double stepLength = 1.0; // how far we have stepped (if too small then no point in continuing - usually an issue due to projection)
 			int j = 0;
 			while(grad.getNorm() > epsilon && stepLength > 1e-6 && j < maxGradDecIterations)
@@ -133,7 +233,9 @@ public abstract class TestCase
 				++j;
 
 				// Approximately find the best step size:
-				double stepSize = backtrack(sol, agents, agent, grad); // TODO replace with local backtracking
+				start = PhaseTimers.start(timers, Phase.Backtrack);
+				double stepSize = backtrack(sol, neighbourhood, agent, grad);
+				PhaseTimers.stop(timers, Phase.Backtrack, start);
 				RealVector step = grad.mapMultiply(-stepSize);
 				
 				// Step the agents state:
@@ -141,18 +243,24 @@ public abstract class TestCase
 				agent.setState(oldState.add(step));
 				
 				// Project back into the constraint set:
+				start = PhaseTimers.start(timers, Phase.Project);
 				agent.project();
+				PhaseTimers.stop(timers, Phase.Project, start);
 				
 				// Update neighbours' g(x) values:
 				RealVector newState = agent.state();
 				RealVector delta = newState.subtract(oldState);
+				start = PhaseTimers.start(timers, Phase.UpdateNeighbourG);
 				agent.getHemmaProtocol().updateNeighbourG(delta.toArray());
+				PhaseTimers.stop(timers, Phase.UpdateNeighbourG, start);
 				
 				// Check how far we've stepped:
 				stepLength = delta.getNorm();
 				
 				// Next gradient:
+				start = PhaseTimers.start(timers, Phase.Gradient);
 				grad = grad(agent, i);
+				PhaseTimers.stop(timers, Phase.Gradient, start);
 			}
 		}
 		
@@ -168,10 +276,28 @@ public abstract class TestCase
 		agent.stepEpsilon();
 		
 		// Inform neighbours of values:
+		start = PhaseTimers.start(timers, Phase.UpdateValues);
 		agent.updateValues();
+		PhaseTimers.stop(timers, Phase.UpdateValues, start);
 		
 		// Update average convergence estaimte:
+		start = PhaseTimers.start(timers, Phase.UpdateConvergence);
 		agent.updateConvergence(previousState);
+		PhaseTimers.stop(timers, Phase.UpdateConvergence, start);
+	}
+
+	/**
+	 * The agent and its neighbours. Only their terms of the Lagrange function 
+	 * depend on the agent's state, so this set gives the same line search as 
+	 * the full network.
+	 */
+	protected Set<Agent> neighbourhood(Agent agent)
+	{
+		Set<Agent> neighbourhood = new LinkedHashSet<>();
+		neighbourhood.add(agent);
+		for (IAgent n : agent.neighbours())
+			neighbourhood.add((Agent)n);
+		return neighbourhood;
 	}
 
 	public RealVector grad(Agent agent, int i)
@@ -191,15 +317,16 @@ public abstract class TestCase
 	 * This method only returns the step size and does not change the agent's state.
 	 * Ref. http://stanford.edu/~boyd/cvxbook/bv_cvxslides.pdf slide 10-6.
 	 * @param sol Solution; used for calculating the Lagrange function.
-	 * @param agents List of all agents; used for calculating the Lagrange function.
+	 * @param agents The agent's neighbourhood; used for calculating the Lagrange function.
 	 * @param agent The agent whose is stepping.
 	 * @param grad The gradient at the current state.
 	 * @return The step size.
 	 */
 	private double backtrack(Solution sol, Set<Agent> agents, Agent agent, RealVector grad)
 	{
-boolean oldCacheValue = HEMMAProtocol.useCache;
-HEMMAProtocol.useCache = false;
+EvaluationContext context = agent.getHemmaProtocol().getContext(); // shared with the neighbourhood by optimise()
+boolean oldCacheValue = context.isUsingCache();
+context.setUseCache(false);
 		double lagrange = sol.lagrange(agents);
 		double stepSize = 2;
 		double grad2 = grad.dotProduct(grad);
@@ -243,7 +370,7 @@ HEMMAProtocol.useCache = false;
 		agent.setvMinus(vminus);
 		agent.setPower(power);
 		
-HEMMAProtocol.useCache = oldCacheValue;
+context.setUseCache(oldCacheValue);
 		
 		if(gradNorm*stepSize <= minStep && !improved)
 			return 0.0;
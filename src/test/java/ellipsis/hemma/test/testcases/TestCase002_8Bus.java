@@ -20,7 +20,8 @@ public class TestCase002_8Bus extends TestCase
 	 */
 	public Set<Agent> init()
 	{
-		NetworkBuilder builder = new NetworkBuilder();
+		NetworkBuilder builder = new NetworkBuilder()
+				.withParameterStore(null); // parameters are set below
 		
 		builder.makeVCAgent("VC1", 250.0) // 200.0)
 		       .setGrounded(true);
@@ -0,0 +1,95 @@
+package ellipsis.hemma.test.testcases;
+
+import static ellipsis.common.ListUtil.setEach;
+
+import java.util.Set;
+
+import ellipsis.hemma.Agent;
+import ellipsis.hemma.HemmaParameters;
+import ellipsis.hemma.ParameterStore;
+import ellipsis.hemma.test.NetworkGenerator;
+import ellipsis.hemma.test.StreamingSolution;
+import ellipsis.hemma.test.NetworkGenerator.Topology;
+import ellipsis.hemma.test.trace.TraceWriter;
+
+/**
+ * Synthetic network from {@link NetworkGenerator} for scaling studies.
+ */
+public class TestCase003_Generated extends TestCase
+{
+	private Topology topology;
+	private int busCount;
+	private long seed;
+	private HemmaParameters parameters; // null to take them from the parameter store
+	private ParameterStore parameterStore = ParameterStore.shared();
+
+	public static void main(String[] args)
+	{
+		Topology topology = args.length > 0 ? Topology.valueOf(args[0]) : Topology.Mesh;
+		int busCount = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+		int shards = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+		new TestCase003_Generated(topology, busCount, seed)
+			.withShards(shards)
+			.withSolutionFactory(k -> new StreamingSolution(k, k/1000, new TraceWriter(TraceWriter.DEFAULT_FILE)))
+			.run(2000);
+	}
+
+	public TestCase003_Generated()
+	{
+		this(Topology.Mesh, 100, 0);
+	}
+
+	public TestCase003_Generated(Topology topology, int busCount, long seed)
+	{
+		this.topology = topology;
+		this.busCount = busCount;
+		this.seed = seed;
+	}
+
+	/**
+	 * @param parameters The optimisation parameters of the network, in place 
+	 * of those of the parameter store, so that results are reproducible.
+	 */
+	public TestCase003_Generated withParameters(HemmaParameters parameters)
+	{
+		this.parameters = parameters;
+		return this;
+	}
+
+	/**
+	 * @param store Provides the parameters tuned for the most similar 
+	 * network unless {@link #withParameters(HemmaParameters) given}; by 
+	 * default the {@link ParameterStore#shared() shared} store.
+	 */
+	public TestCase003_Generated withParameterStore(ParameterStore store)
+	{
+		this.parameterStore = store;
+		return this;
+	}
+
+	/**
+	 * Create a test case.
+	 * @return
+	 */
+	public Set<Agent> init()
+	{
+		Set<Agent> agents = new NetworkGenerator(seed).generate(topology, busCount).builder()
+				.withParameterStore(parameters == null ? parameterStore : null)
+				.agentSet();
+
+		// Set optimization parameters:
+		if(parameters != null)
+			parameters.applyTo(agents);
+		setEach(agents, Agent::setAlphaMax,          1e24);
+		setEach(agents, Agent::setLambdaMax,         1e6);
+
+		return agents;
+	}
+
+	@Override
+	public String toString()
+	{
+		return topology+"-"+busCount+"-"+seed;
+	}
+}
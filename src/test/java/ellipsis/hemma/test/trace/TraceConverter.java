@@ -0,0 +1,62 @@
+package ellipsis.hemma.test.trace;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+import ellipsis.hemma.test.CSVSink;
+
+/**
+ * Converts a trace to the CSV format written by {@link ellipsis.hemma.test.Solution#printCSV(int, int)}.
+ *
+ * Usage: TraceConverter &lt;trace&gt; &lt;csv&gt; [line count]
+ */
+public class TraceConverter
+{
+	public static void main(String[] args) throws IOException
+	{
+		if(args.length < 2)
+		{
+			System.err.println("Usage: TraceConverter <trace> <csv> [line count]");
+			System.exit(1);
+		}
+
+		try(TraceReader trace = new TraceReader(new File(args[0]));
+			PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(args[1]), 1 << 16)))
+		{
+			long lineCount = args.length > 2 ? Long.parseLong(args[2]) : trace.getRowCount();
+			convert(trace, out, lineCount);
+		}
+	}
+
+	/**
+	 * Writes evenly spaced rows, including the first and last.
+	 */
+	public static void convert(TraceReader trace, PrintStream out, long lineCount)
+	{
+		List<String> columns = trace.getColumnNames();
+		CSVSink.printHeader(out, columns.subList(1, columns.size()));
+
+		long rows = trace.getRowCount();
+		long step = Math.max(1, rows/Math.max(1, lineCount));
+		for (long row = 0; row < rows; row += step)
+			printRow(trace, out, row);
+		if((rows-1)%step != 0)
+			printRow(trace, out, rows-1);
+		out.flush();
+	}
+
+	private static void printRow(TraceReader trace, PrintStream out, long row)
+	{
+		out.print((long)trace.get(0, row));
+		for (int c = 1; c < trace.getColumnCount(); c++)
+		{
+			out.print(',');
+			out.print(trace.get(c, row));
+		}
+		out.println();
+	}
+}
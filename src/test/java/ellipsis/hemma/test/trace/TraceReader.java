@@ -0,0 +1,242 @@
+package ellipsis.hemma.test.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Memory maps a trace written by {@link TraceWriter}. Values are read
+ * directly from the mapping so a column, or a range of rows in a column,
+ * can be read without touching the rest of the file.
+ */
+public class TraceReader implements AutoCloseable
+{
+	private static final long MAX_MAPPING_BYTES = 1L << 30;
+
+	private FileChannel channel;
+	private int blockRows;
+	private int columnCount;
+	private long rowCount;
+	private long blockCount;
+	private long dataOffset;
+	private int blockBytes;
+	private int blocksPerMapping;
+	private MappedByteBuffer[] mappings;
+
+	private List<String> agentNames;
+	private List<String> columnNames;
+	private String[] metrics;
+	private int[] agents;
+	private int[] components;
+
+	public TraceReader(File file) throws IOException
+	{
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+		// Fixed header:
+		ByteBuffer fixed = read(0, TraceWriter.MAGIC.length + 4*4 + 2*8);
+		byte[] magic = new byte[TraceWriter.MAGIC.length];
+		fixed.get(magic);
+		if(!Arrays.equals(magic, TraceWriter.MAGIC))
+			throw new IOException(file+" is not a trace file.");
+		int version = fixed.getInt();
+		if(version != TraceWriter.VERSION)
+			throw new IOException("Unsupported trace version "+version+" in "+file);
+		blockRows = fixed.getInt();
+		columnCount = fixed.getInt();
+		int agentCount = fixed.getInt();
+		rowCount = fixed.getLong();
+		dataOffset = fixed.getLong();
+
+		// Names and column metadata:
+		ByteBuffer header = read(fixed.limit(), (int)dataOffset - fixed.limit());
+		agentNames = new ArrayList<>(agentCount);
+		for (int i = 0; i < agentCount; i++)
+			agentNames.add(getString(header));
+		columnNames = new ArrayList<>(columnCount);
+		metrics = new String[columnCount];
+		agents = new int[columnCount];
+		components = new int[columnCount];
+		for (int c = 0; c < columnCount; c++)
+		{
+			columnNames.add(getString(header));
+			metrics[c] = getString(header);
+			agents[c] = header.getInt();
+			components[c] = header.getInt();
+		}
+
+		// Map whole blocks so that no block spans two mappings:
+		blockBytes = 8*columnCount*blockRows;
+		blockCount = (rowCount + blockRows - 1)/blockRows;
+		blocksPerMapping = (int)Math.max(1, MAX_MAPPING_BYTES/blockBytes);
+		mappings = new MappedByteBuffer[(int)((blockCount + blocksPerMapping - 1)/blocksPerMapping)];
+		for (int i = 0; i < mappings.length; i++)
+		{
+			long blocks = Math.min(blocksPerMapping, blockCount - (long)i*blocksPerMapping);
+			mappings[i] = channel.map(MapMode.READ_ONLY, dataOffset + (long)i*blocksPerMapping*blockBytes, blocks*blockBytes);
+			mappings[i].order(TraceWriter.ORDER);
+		}
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(TraceWriter.ORDER);
+		while(buffer.hasRemaining())
+		{
+			if(channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException("Trace header is truncated.");
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	private static String getString(ByteBuffer buffer)
+	{
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return The value of the given column in the given row.
+	 */
+	public double get(int column, long row)
+	{
+		long block = row/blockRows;
+		MappedByteBuffer mapping = mappings[(int)(block/blocksPerMapping)];
+		int offset = (int)(block%blocksPerMapping)*blockBytes + 8*(column*blockRows + (int)(row%blockRows));
+		return mapping.getDouble(offset);
+	}
+
+	/**
+	 * @return A view of the given column's values in the given block without
+	 * copying. Rows past {@link #getRowCount()} are NaN.
+	 */
+	public DoubleBuffer block(int column, long block)
+	{
+		ByteBuffer slice = mappings[(int)(block/blocksPerMapping)].duplicate();
+		int offset = (int)(block%blocksPerMapping)*blockBytes + 8*column*blockRows;
+		slice.position(offset);
+		slice.limit(offset + 8*blockRows);
+		return slice.slice().order(TraceWriter.ORDER).asDoubleBuffer();
+	}
+
+	/**
+	 * Copies rows [from, to) of a column into dst starting at offset.
+	 */
+	public void read(int column, long from, long to, double[] dst, int offset)
+	{
+		long row = from;
+		while(row < to)
+		{
+			long b = row/blockRows;
+			int start = (int)(row%blockRows);
+			int length = (int)Math.min(blockRows - start, to - row);
+			DoubleBuffer values = block(column, b);
+			values.position(start);
+			values.get(dst, offset, length);
+			offset += length;
+			row += length;
+		}
+	}
+
+	/**
+	 * @return All of a column's values.
+	 */
+	public double[] column(int column)
+	{
+		double[] values = new double[(int)rowCount];
+		read(column, 0, rowCount, values, 0);
+		return values;
+	}
+
+	/**
+	 * @return The index of the column with the given name, or -1 if there is none.
+	 */
+	public int column(String name)
+	{
+		return columnNames.indexOf(name);
+	}
+
+	/**
+	 * @return The indices of the columns of the given metric, e.g. "x" or "lambda".
+	 */
+	public int[] columns(String metric)
+	{
+		int count = 0;
+		for (int c = 0; c < columnCount; c++)
+			if(metrics[c].equals(metric))
+				++count;
+		int[] columns = new int[count];
+		count = 0;
+		for (int c = 0; c < columnCount; c++)
+			if(metrics[c].equals(metric))
+				columns[count++] = c;
+		return columns;
+	}
+
+	/**
+	 * @return The index of the agent a column belongs to, or -1 for network wide values.
+	 */
+	public int getAgent(int column)
+	{
+		return agents[column];
+	}
+
+	public int getComponent(int column)
+	{
+		return components[column];
+	}
+
+	public String getMetric(int column)
+	{
+		return metrics[column];
+	}
+
+	public List<String> getColumnNames()
+	{
+		return Collections.unmodifiableList(columnNames);
+	}
+
+	public List<String> getAgentNames()
+	{
+		return Collections.unmodifiableList(agentNames);
+	}
+
+	public int getColumnCount()
+	{
+		return columnCount;
+	}
+
+	public long getRowCount()
+	{
+		return rowCount;
+	}
+
+	public int getBlockRows()
+	{
+		return blockRows;
+	}
+
+	public long getBlockCount()
+	{
+		return blockCount;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		mappings = null;
+		channel.close();
+	}
+}
@@ -0,0 +1,220 @@
+package ellipsis.hemma.test.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import ellipsis.hemma.test.DataPoint;
+import ellipsis.hemma.test.DataPointSink;
+
+/**
+ * Writes data points to a columnar binary trace file.
+ *
+ * Layout (little endian):
+ * <pre>
+ * header:  "HEMMATRC", version, block rows B, column count C, agent count,
+ *          row count, data offset,
+ *          agent names,
+ *          per column: name, metric, agent index (-1 if network wide), component
+ * blocks:  per block of B rows, per column, B doubles (unused rows are NaN)
+ * </pre>
+ * Column 0 is the data point index k and the rest follow {@link DataPoint#columnNames(int)}.
+ * Strings are an unsigned short byte count followed by UTF-8 bytes. Blocks
+ * start at the data offset, which is aligned to 64 bytes.
+ *
+ * @see TraceReader
+ */
+public class TraceWriter implements DataPointSink
+{
+	static final byte[] MAGIC = "HEMMATRC".getBytes(StandardCharsets.US_ASCII);
+	static final int VERSION = 1;
+	static final int ROW_COUNT_POSITION = 24;
+	static final int ALIGNMENT = 64;
+	static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	private static final int TARGET_BLOCK_BYTES = 8 << 20;
+	private static final int MAX_BLOCK_ROWS = 4096;
+
+	/**
+	 * Where {@link ellipsis.hemma.test.testcases.TestCase#run(int)} writes its trace.
+	 */
+	public static final File DEFAULT_FILE = new File("/opt/hemma/log/data.trace");
+
+	private File file;
+	private FileChannel channel;
+	private ByteBuffer block;
+	private double[] row;
+	private int columnCount;
+	private int blockRows;
+	private int rowInBlock;
+	private long blockCount;
+	private long rowCount;
+	private long dataOffset;
+
+	public TraceWriter(File file)
+	{
+		this.file = file;
+	}
+
+	@Override
+	public void open(List<String> agentNames)
+	{
+		row = new double[DataPoint.columnCount(agentNames.size())];
+		columnCount = 1 + row.length;
+		blockRows = Math.max(1, Math.min(MAX_BLOCK_ROWS, TARGET_BLOCK_BYTES/(8*columnCount)));
+		block = ByteBuffer.allocateDirect(8*columnCount*blockRows).order(ORDER);
+		clearBlock();
+
+		try
+		{
+			File parent = file.getAbsoluteFile().getParentFile();
+			if(parent != null)
+				parent.mkdirs();
+			@SuppressWarnings("resource")
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			raf.setLength(0);
+			channel = raf.getChannel();
+
+			ByteBuffer header = header(agentNames);
+			dataOffset = header.limit();
+			writeFully(header, 0);
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	private ByteBuffer header(List<String> agentNames)
+	{
+		// Column metadata:
+		List<String> names = new ArrayList<>(columnCount);
+		List<String> metrics = new ArrayList<>(columnCount);
+		int[] agents = new int[columnCount];
+		int[] components = new int[columnCount];
+		names.add("k");
+		metrics.add("k");
+		agents[0] = -1;
+		int c = 1;
+		for (int m = 0; m < DataPoint.METRICS.length; m++)
+		{
+			int width = DataPoint.METRIC_WIDTHS[m];
+			int count = width == 0 ? 1 : width*agentNames.size();
+			for (int i = 0; i < count; i++, c++)
+			{
+				metrics.add(DataPoint.METRICS[m]);
+				agents[c] = width == 0 ? -1 : i/width;
+				components[c] = width == 0 ? 0 : i%width;
+			}
+		}
+		names.addAll(DataPoint.columnNames(agentNames.size()));
+
+		// Size:
+		int size = MAGIC.length + 4*4 + 2*8;
+		for (String name : agentNames)
+			size += stringSize(name);
+		for (int i = 0; i < columnCount; i++)
+			size += stringSize(names.get(i)) + stringSize(metrics.get(i)) + 2*4;
+		size = (size + ALIGNMENT - 1)/ALIGNMENT*ALIGNMENT;
+
+		ByteBuffer header = ByteBuffer.allocate(size).order(ORDER);
+		header.put(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(blockRows);
+		header.putInt(columnCount);
+		header.putInt(agentNames.size());
+		header.putLong(0); // row count, set on close
+		header.putLong(size);
+		for (String name : agentNames)
+			putString(header, name);
+		for (int i = 0; i < columnCount; i++)
+		{
+			putString(header, names.get(i));
+			putString(header, metrics.get(i));
+			header.putInt(agents[i]);
+			header.putInt(components[i]);
+		}
+
+		header.clear();
+		return header;
+	}
+
+	private static int stringSize(String s)
+	{
+		return 2 + s.getBytes(StandardCharsets.UTF_8).length;
+	}
+
+	private static void putString(ByteBuffer buffer, String s)
+	{
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		buffer.putShort((short)bytes.length);
+		buffer.put(bytes);
+	}
+
+	@Override
+	public void write(int k, DataPoint point)
+	{
+		point.values(row);
+		block.putDouble(8*rowInBlock, k);
+		for (int c = 1; c < columnCount; c++)
+			block.putDouble(8*(c*blockRows + rowInBlock), row[c-1]);
+		++rowCount;
+
+		if(++rowInBlock == blockRows)
+			flushBlock();
+	}
+
+	@Override
+	public void close()
+	{
+		try
+		{
+			if(rowInBlock > 0)
+				flushBlock();
+
+			ByteBuffer count = ByteBuffer.allocate(8).order(ORDER);
+			count.putLong(0, rowCount);
+			writeFully(count, ROW_COUNT_POSITION);
+			channel.force(false);
+			channel.close();
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void flushBlock()
+	{
+		try
+		{
+			block.clear();
+			writeFully(block, dataOffset + blockCount*block.capacity());
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		++blockCount;
+		rowInBlock = 0;
+		clearBlock();
+	}
+
+	private void clearBlock()
+	{
+		for (int i = 0; i < block.capacity(); i += 8)
+			block.putDouble(i, Double.NaN);
+	}
+
+	private void writeFully(ByteBuffer buffer, long position) throws IOException
+	{
+		while(buffer.hasRemaining())
+			position += channel.write(buffer, position);
+	}
+}